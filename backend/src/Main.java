@@ -9,13 +9,16 @@ public class Main {
         udpThread.start();
 
         // 2) Start TCP Task Server
-        tcp.TCPTaskServer tcpServer = new tcp.TCPTaskServer(8080);
+        tcp.TaskServer tcpServer = tcp.TaskServer.create(8080);
         Thread tcpThread = new Thread(() -> tcpServer.start());
         tcpThread.start();
 
-        // 3) Start HTTP Gateway
-        gateway.HttpGateway gateway = new gateway.HttpGateway(3000, "localhost", 8080);
-        Thread gatewayThread = new Thread(() -> gateway.start());
+        // 3) Start HTTP Gateway. With -Dnetstream.gateway.inProcess=true it calls the TCP
+        //    server's handlers directly instead of connecting to port 8080
+        gateway.GatewayServer httpGateway = Boolean.getBoolean("netstream.gateway.inProcess")
+                ? gateway.GatewayServer.create(3000, tcpServer.processor())
+                : gateway.GatewayServer.create(3000, "localhost", 8080);
+        Thread gatewayThread = new Thread(() -> httpGateway.start());
         gatewayThread.start();
 
     // Start URL Integration Service (Member 3)
@@ -56,10 +59,11 @@ public class Main {
             // Request servers to stop
             try { udpServer.stop(); } catch (Throwable t) { /* ignore */ }
             try { tcpServer.stop(); } catch (Throwable t) { /* ignore */ }
-            try { gateway.stop(); } catch (Throwable t) { /* ignore */ }
+            try { httpGateway.stop(); } catch (Throwable t) { /* ignore */ }
             try { urlService.stop(); } catch (Throwable t) { /* ignore */ }
             try { nioServer.stop(); } catch (Throwable t) { /* ignore */ }
             try { monitor.stop(); } catch (Throwable t) { /* ignore */ }
+            try { shared.DataStore.shutdown(); } catch (Throwable t) { /* ignore */ }
 
             // Wait for threads to finish (short timeout each). If they don't exit,
             // interrupt them so JVM can terminate cleanly after the hook completes.
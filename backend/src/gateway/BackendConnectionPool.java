@@ -0,0 +1,208 @@
+package gateway;
+
+import shared.MetricsRegistry;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kept-alive connections from the gateway to one line-protocol backend (the TCP task
+ * server or the URL service), shared by all gateway threads. Both backends answer each
+ * request (a JSON line and an empty line) with one line and keep the connection open.
+ *
+ * At most MAX_SIZE connections are open or in use at once; a caller waits up to
+ * WAIT_TIMEOUT_MS for one. Idle connections are reused most recent first and closed once
+ * idle for IDLE_TIMEOUT_MS, before the backend's own idle timeout would. A backend may still
+ * have closed a connection (restart, request limit): if a reused connection ends without a
+ * response, the request is sent once more on a new connection. A request that timed out is
+ * not retried, and its connection is closed.
+ */
+final class BackendConnectionPool {
+    private static final int MAX_SIZE = Integer.getInteger("netstream.gateway.poolSize", 50);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("netstream.gateway.poolIdleMs", 5000);
+    private static final long WAIT_TIMEOUT_MS = Long.getLong("netstream.gateway.poolWaitMs", 2000);
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+    private static final int RESPONSE_TIMEOUT_MS = Integer.getInteger("netstream.gateway.backendTimeoutMs", 30000);
+
+    private final String host;
+    private final int port;
+    // One permit per connection in use; idle connections hold none
+    private final Semaphore slots = new Semaphore(MAX_SIZE);
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.currentTimeMillis() + IDLE_TIMEOUT_MS);
+
+    private static final class Connection {
+        final Socket socket;
+        final BufferedWriter out;
+        final BufferedReader in;
+        long lastUsed;
+        int requests;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        // The response line, or null if the backend closed the connection first
+        String exchange(String request) throws IOException {
+            out.write(request);
+            out.write("\n\n"); // Empty line ends the request for the URL service
+            out.flush();
+            requests++;
+            return in.readLine();
+        }
+
+        // Open, and nothing unread from an earlier exchange
+        boolean isUsable(long now) throws IOException {
+            return !socket.isClosed() && now - lastUsed < IDLE_TIMEOUT_MS && !in.ready();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    BackendConnectionPool(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Send one request line and return the backend's response line, or null if the backend
+     * closed the connection without answering.
+     *
+     * @throws TimeoutException if no connection became free within WAIT_TIMEOUT_MS
+     * @throws IOException      if the backend cannot be reached or did not answer in time
+     */
+    String send(String request) throws IOException, TimeoutException {
+        long start = System.nanoTime();
+        try {
+            if (!slots.tryAcquire(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                MetricsRegistry.gatewayPoolWaitTimeouts.incrementAndGet();
+                throw new TimeoutException("No connection to " + host + ":" + port + " free within " + WAIT_TIMEOUT_MS + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a connection to " + host + ":" + port);
+        }
+        MetricsRegistry.gatewayPoolWaitMs.addAndGet(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        Connection connection = null;
+        try {
+            connection = borrow();
+            while (true) {
+                boolean reused = connection.requests > 0;
+                String response;
+                try {
+                    response = connection.exchange(request);
+                } catch (SocketTimeoutException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (!reused) {
+                        throw e;
+                    }
+                    response = null; // Reset by the backend: stale, as below
+                }
+                if (response != null) {
+                    giveBack(connection);
+                    connection = null;
+                    return response;
+                }
+                connection.close();
+                if (!reused) {
+                    connection = null;
+                    return null;
+                }
+                // Closed by the backend while idle, before it read this request
+                MetricsRegistry.gatewayPoolStaleRetries.incrementAndGet();
+                connection = open();
+            }
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            slots.release();
+        }
+    }
+
+    /**
+     * Close the idle connections (on shutdown); connections in use close when returned.
+     */
+    void close() {
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            MetricsRegistry.gatewayPoolIdle.decrementAndGet();
+            connection.close();
+        }
+    }
+
+    // Most recently used idle connection that is still usable, or a new one
+    private Connection borrow() throws IOException {
+        long now = System.currentTimeMillis();
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            MetricsRegistry.gatewayPoolIdle.decrementAndGet();
+            if (connection.isUsable(now)) {
+                MetricsRegistry.gatewayPoolReused.incrementAndGet();
+                return connection;
+            }
+            connection.close();
+        }
+        return open();
+    }
+
+    private Connection open() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(RESPONSE_TIMEOUT_MS);
+            Connection connection = new Connection(socket);
+            MetricsRegistry.gatewayPoolOpened.incrementAndGet();
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void giveBack(Connection connection) {
+        long now = System.currentTimeMillis();
+        connection.lastUsed = now;
+        idle.offerFirst(connection);
+        MetricsRegistry.gatewayPoolIdle.incrementAndGet();
+        sweepIfDue(now);
+    }
+
+    // Close connections idle too long; those at the tail are the oldest
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + IDLE_TIMEOUT_MS)) {
+            return;
+        }
+        Connection oldest;
+        while ((oldest = idle.peekLast()) != null && now - oldest.lastUsed >= IDLE_TIMEOUT_MS) {
+            if (idle.removeLastOccurrence(oldest)) {
+                MetricsRegistry.gatewayPoolIdle.decrementAndGet();
+                oldest.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package gateway;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental decoder for a request body sent with Transfer-Encoding: chunked. Both engines
+ * feed it whatever bytes have arrived; it keeps its place between calls (even inside a
+ * chunk-size line) and consumes input up to the end of the body and its trailers.
+ */
+final class ChunkedBodyDecoder {
+    private static final int MAX_LINE_BYTES = 1024;
+
+    private enum State { SIZE, DATA, DATA_END, TRAILER, DONE }
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final StringBuilder line = new StringBuilder();
+    private State state = State.SIZE;
+    private long remaining; // bytes left in the current chunk
+
+    /**
+     * Consume bytes from data[offset, offset + length). Returns how many were used: all of
+     * them, unless the body ended before.
+     *
+     * @throws HttpRequest.RejectedException (400) if the encoding is malformed
+     */
+    int decode(byte[] data, int offset, int length) throws HttpRequest.RejectedException {
+        int i = offset;
+        int end = offset + length;
+        while (i < end && state != State.DONE) {
+            switch (state) {
+                case DATA: {
+                    int n = (int) Math.min(remaining, end - i);
+                    body.write(data, i, n);
+                    i += n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        state = State.DATA_END;
+                    }
+                    break;
+                }
+                default: {
+                    // SIZE, DATA_END and TRAILER read a line
+                    byte b = data[i++];
+                    if (b != '\n') {
+                        if (line.length() >= MAX_LINE_BYTES) {
+                            throw HttpRequest.RejectedException.badRequest("Chunk line too long");
+                        }
+                        line.append((char) (b & 0xff));
+                        break;
+                    }
+                    int lineEnd = line.length() > 0 && line.charAt(line.length() - 1) == '\r' ? line.length() - 1 : line.length();
+                    String text = line.substring(0, lineEnd);
+                    line.setLength(0);
+                    endOfLine(text);
+                }
+            }
+        }
+        return i - offset;
+    }
+
+    private void endOfLine(String text) throws HttpRequest.RejectedException {
+        switch (state) {
+            case SIZE:
+                int extension = text.indexOf(';');
+                String size = (extension >= 0 ? text.substring(0, extension) : text).trim();
+                try {
+                    remaining = Long.parseLong(size, 16);
+                } catch (NumberFormatException e) {
+                    remaining = -1;
+                }
+                if (remaining < 0) {
+                    throw HttpRequest.RejectedException.badRequest("Malformed chunk size");
+                }
+                state = remaining == 0 ? State.TRAILER : State.DATA;
+                break;
+            case DATA_END:
+                if (!text.isEmpty()) {
+                    throw HttpRequest.RejectedException.badRequest("Chunk longer than its size");
+                }
+                state = State.SIZE;
+                break;
+            default:
+                // Trailer fields are ignored; an empty line ends the body
+                if (text.isEmpty()) {
+                    state = State.DONE;
+                }
+        }
+    }
+
+    boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /**
+     * Body bytes decoded so far.
+     */
+    int size() {
+        return body.size();
+    }
+
+    /**
+     * The decoded body as text, once complete.
+     */
+    String body() {
+        return body.toString(StandardCharsets.UTF_8);
+    }
+}
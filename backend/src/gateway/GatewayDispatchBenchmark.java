@@ -0,0 +1,99 @@
+package gateway;
+
+import com.sun.management.OperatingSystemMXBean;
+import shared.JsonUtils;
+import tcp.TaskRequestProcessor;
+import tcp.TaskServer;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+
+/**
+ * What the gateway's in-process mode saves per request: the same request lines handed to
+ * a TCP server in this JVM through a pooled loopback connection (the default gateway path)
+ * and through TaskRequestProcessor.processLocal(). Reports wall time and process CPU time
+ * per request; HTTP handling, the same on both paths, is left out. Server logging is
+ * discarded while measuring.
+ *
+ *   java -Dnetstream.store.engine=memory gateway.GatewayDispatchBenchmark [requests] [port]
+ */
+public class GatewayDispatchBenchmark {
+    private static final OperatingSystemMXBean OS =
+            (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    private interface Dispatch {
+        String send(String line) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 18080;
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        TaskServer server = TaskServer.create(port);
+        Thread serverThread = new Thread(server::start, "benchmark-tcp-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        awaitListening(port);
+
+        TaskRequestProcessor processor = server.processor();
+        BackendConnectionPool pool = new BackendConnectionPool("localhost", port);
+        Dispatch socket = pool::send;
+        Dispatch inProcess = processor::processLocal;
+
+        String created = processor.processLocal("{\"action\":\"CREATE_TASK\",\"data\":{\"title\":\"Benchmark\","
+                + "\"assignee\":\"bench\",\"deadline\":\"2025-12-01\",\"priority\":\"high\"}}");
+        String taskId = JsonUtils.parseJson(created).getAsJsonObject("data").get("taskId").getAsString();
+        String[][] workloads = {
+            { "GET_TASK", "{\"action\":\"GET_TASK\",\"data\":{\"taskId\":\"" + taskId + "\"}}" },
+            { "CREATE_TASK", "{\"action\":\"CREATE_TASK\",\"data\":{\"title\":\"Benchmark task\",\"assignee\":\"bench\","
+                    + "\"deadline\":\"2025-12-01\",\"priority\":\"low\",\"description\":\"Created by the benchmark\"}}" },
+        };
+
+        report.printf("[Bench] %,d requests per run, one caller%n", requests);
+        report.printf("[Bench] %-12s %-10s %12s %12s%n", "request", "path", "wall us/req", "cpu us/req");
+        for (String[] workload : workloads) {
+            // Warm up both paths before measuring
+            run(socket, workload[1], requests / 4);
+            run(inProcess, workload[1], requests / 4);
+            double[] overSocket = run(socket, workload[1], requests);
+            double[] direct = run(inProcess, workload[1], requests);
+            report.printf("[Bench] %-12s %-10s %12.1f %12.1f%n", workload[0], "socket", overSocket[0], overSocket[1]);
+            report.printf("[Bench] %-12s %-10s %12.1f %12.1f%n", workload[0], "in-process", direct[0], direct[1]);
+        }
+
+        pool.close();
+        server.stop();
+        System.exit(0);
+    }
+
+    // {wall microseconds per request, process CPU microseconds per request}
+    private static double[] run(Dispatch dispatch, String line, int requests) throws Exception {
+        long cpu = OS.getProcessCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            String response = dispatch.send(line);
+            if (response == null || !response.contains("\"success\"")) {
+                throw new IllegalStateException("Unexpected response: " + response);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        cpu = OS.getProcessCpuTime() - cpu;
+        return new double[] { elapsed / 1e3 / requests, cpu / 1e3 / requests };
+    }
+
+    private static void awaitListening(int port) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (Exception e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("TCP server did not start on port " + port);
+    }
+}
@@ -0,0 +1,207 @@
+package gateway;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import shared.DataStore;
+import shared.JsonUtils;
+import shared.MetricsRegistry;
+import shared.RateLimiter;
+import tcp.TaskRequestProcessor;
+import threading.ExceptionHandler;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * What the gateway does with a request, whichever engine read it: rate limiting, the
+ * routes, forwarding to the backends, and the bytes of the response. Thread-safe; respond()
+ * may block on a backend, so engines call it from worker threads.
+ *
+ *   GET /notifications   stored notifications
+ *   GET /events          Server-Sent Events stream (served by the engine, see isEventStream)
+ *   OPTIONS *            CORS preflight
+ *   POST /url-service*   body forwarded to the URL service
+ *   POST *               body forwarded to the TCP server, or its processor in-process
+ */
+final class GatewayHandler {
+    // Persistent connections: how long one may sit idle between requests and how many
+    // requests it may carry
+    static final int KEEP_ALIVE_MS = Integer.getInteger("netstream.gateway.keepAliveMs", 5000);
+    static final int MAX_REQUESTS_PER_CONNECTION = Integer.getInteger("netstream.gateway.maxRequestsPerConnection", 100);
+    // Responses longer than this (in chars) go to HTTP/1.1 clients chunked, encoded as written
+    private static final int CHUNKED_RESPONSE_CHARS = Integer.getInteger("netstream.gateway.chunkedResponseChars", 64 * 1024);
+
+    // Per-client rate limits (see RateLimiter), keyed by browser address, or by this header
+    // when set (e.g. X-User). Only set it behind a proxy that fills it in: clients can
+    // send any value.
+    static final String USER_HEADER = System.getProperty("netstream.rateLimit.userHeader");
+    private static final String TRUSTED_CLIENTS = System.getProperty("netstream.rateLimit.httpTrusted", "");
+
+    static final byte[] EVENT_STREAM_HEAD = ("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: text/event-stream\r\n"
+            + "Cache-Control: no-cache\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Access-Control-Allow-Origin: *\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+    static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final RateLimiter rateLimiter = new RateLimiter("http", TRUSTED_CLIENTS, MetricsRegistry.httpRateLimited);
+    private final String tcpHost;
+    private final int tcpPort;
+    // Kept-alive backend connections, shared by all requests
+    private final BackendConnectionPool taskServerPool;
+    private final BackendConnectionPool urlServicePool = new BackendConnectionPool("localhost", 8082);
+    // In-process mode: the TCP server's processor, called directly; null to use the socket
+    private final TaskRequestProcessor taskProcessor;
+
+    GatewayHandler(String tcpHost, int tcpPort, TaskRequestProcessor taskProcessor) {
+        this.tcpHost = tcpHost;
+        this.tcpPort = tcpPort;
+        this.taskServerPool = new BackendConnectionPool(tcpHost, tcpPort);
+        this.taskProcessor = taskProcessor;
+    }
+
+    void logRouting() {
+        if (taskProcessor != null) {
+            System.out.println("[INFO] Handling task requests in-process");
+        } else {
+            System.out.println("[INFO] Forwarding to TCP server at " + tcpHost + ":" + tcpPort);
+        }
+    }
+
+    static boolean isEventStream(HttpRequest request) {
+        return request.method.equals("GET") && request.path.equals("/events");
+    }
+
+    /**
+     * Rate limit for an event stream request: null to start streaming (EVENT_STREAM_HEAD,
+     * then event()s), otherwise the response to send instead.
+     */
+    HttpResponse admitEventStream(HttpRequest request, boolean keepAlive) {
+        return rateLimited(request.client, "EVENTS", keepAlive);
+    }
+
+    /**
+     * The complete response to any request except an event stream.
+     */
+    HttpResponse respond(HttpRequest request, boolean keepAlive) {
+        // Quick route: GET /notifications -> return stored notifications
+        if (request.method.equals("GET") && request.path.equals("/notifications")) {
+            HttpResponse refusal = rateLimited(request.client, "GET_NOTIFICATIONS", keepAlive);
+            return refusal != null ? refusal
+                    : response("200 OK", JsonUtils.createSuccessResponse(DataStore.getNotifications()), keepAlive);
+        }
+
+        // Handle OPTIONS request (CORS preflight)
+        if (request.method.equals("OPTIONS")) {
+            return response("204 No Content", null, keepAlive,
+                    "Access-Control-Allow-Headers: Content-Type" + (USER_HEADER != null ? ", " + USER_HEADER : ""));
+        }
+
+        String jsonBody = request.body;
+        System.out.println("[DEBUG] Request Path: " + request.path);
+        System.out.println("[DEBUG] JSON Body: " + jsonBody);
+
+        HttpResponse refusal = rateLimited(request.client, actionOf(jsonBody), keepAlive);
+        if (refusal != null) {
+            return refusal;
+        }
+
+        // Route to appropriate service based on path
+        String response;
+        if (jsonBody.trim().isEmpty()) {
+            // A backend would wait for a request line that never comes
+            response = JsonUtils.createErrorResponse("Empty request");
+        } else if (request.path.startsWith("/url-service")) {
+            // Forward to URL Service (port 8082)
+            response = forwardToService(urlServicePool, "localhost", 8082, jsonBody);
+        } else if (taskProcessor != null) {
+            // TCP server in this JVM: call its handlers, no socket and no second JSON round trip
+            response = taskProcessor.processLocal(jsonBody);
+        } else {
+            // Forward to TCP server (port 8080)
+            response = forwardToService(taskServerPool, tcpHost, tcpPort, jsonBody);
+        }
+        boolean chunked = !request.http10 && response.length() > CHUNKED_RESPONSE_CHARS;
+        return HttpResponse.of("200 OK", response, keepAlive, chunked);
+    }
+
+    /**
+     * Close the idle backend connections (on shutdown).
+     */
+    void close() {
+        taskServerPool.close();
+        urlServicePool.close();
+    }
+
+    // Take a token for the request; if there is none, the 429 response
+    private HttpResponse rateLimited(String client, String action, boolean keepAlive) {
+        long retryAfterMs = rateLimiter.tryAcquire(client, action);
+        if (retryAfterMs == 0) {
+            return null;
+        }
+        System.out.println("[WARN] Rate limited " + client + " (" + action + "), retry in " + retryAfterMs + " ms");
+        String body = "{\"status\":\"error\",\"message\":\"Rate limit exceeded, retry in " + retryAfterMs
+                + " ms\",\"type\":\"RateLimited\",\"retryAfterMs\":" + retryAfterMs + "}";
+        return response("429 Too Many Requests", body, keepAlive,
+                "Access-Control-Expose-Headers: Retry-After",
+                "Retry-After: " + (retryAfterMs + 999) / 1000);
+    }
+
+    // The top-level "action" of a request body, without parsing the rest; null if none
+    private static String actionOf(String jsonBody) {
+        try {
+            JsonReader in = new JsonReader(new StringReader(jsonBody));
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("action".equals(in.nextName()) && in.peek() == JsonToken.STRING) {
+                    return in.nextString();
+                }
+                in.skipValue();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Not a JSON object; the service reports that
+        }
+        return null;
+    }
+
+    private String forwardToService(BackendConnectionPool pool, String host, int port, String jsonRequest) {
+        String request = jsonRequest.replace('\r', ' ').replace('\n', ' '); // JSON allows no raw newlines in strings
+        try {
+            System.out.println("[DEBUG] Forwarded to " + host + ":" + port + " -> " + request);
+            String response = pool.send(request);
+            System.out.println("[DEBUG] Received from " + host + ":" + port + " -> " + response);
+
+            return response != null ? response : "{\"status\":\"error\",\"message\":\"No response from server\"}";
+
+        } catch (TimeoutException e) {
+            System.out.println("[WARN] " + e.getMessage());
+            return JsonUtils.createErrorResponse("Server busy, retry later");
+        } catch (IOException e) {
+            ExceptionHandler.handle(e, "Gateway forwarding to service " + host + ":" + port);
+            return "{\"status\":\"error\",\"message\":\"Cannot connect to service at " + host + ":" + port + "\"}";
+        }
+    }
+
+    /**
+     * 503 for a connection or request the worker pool had no room for.
+     */
+    static HttpResponse serviceUnavailable() {
+        MetricsRegistry.httpRejected.incrementAndGet();
+        return response("503 Service Unavailable", JsonUtils.createErrorResponse("Server busy, retry later"), false,
+                "Retry-After: 1");
+    }
+
+    /**
+     * One SSE event carrying a notification.
+     */
+    static byte[] event(String notification) {
+        return ("data: " + notification + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // A response with Content-Length
+    private static HttpResponse response(String status, String body, boolean keepAlive, String... extraHeaders) {
+        return HttpResponse.of(status, body, keepAlive, false, extraHeaders);
+    }
+}
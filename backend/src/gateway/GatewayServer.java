@@ -0,0 +1,49 @@
+package gateway;
+
+import tcp.TaskRequestProcessor;
+
+/**
+ * The browser-facing HTTP gateway on port 3000. Two engines, chosen at startup with
+ * -Dnetstream.gateway.engine:
+ *
+ *   blocking - HttpGateway, a pool thread per connection (default)
+ *   nio      - NioHttpGateway, selector threads plus the worker pool for backend calls
+ *
+ * Both route requests through GatewayHandler.
+ */
+public interface GatewayServer {
+
+    /**
+     * Serve until stop() is called. Blocks the calling thread.
+     */
+    void start();
+
+    void stop();
+
+    /**
+     * A gateway forwarding task requests to the TCP server at tcpHost:tcpPort.
+     */
+    static GatewayServer create(int httpPort, String tcpHost, int tcpPort) {
+        return create(httpPort, new GatewayHandler(tcpHost, tcpPort, null));
+    }
+
+    /**
+     * A gateway in the same JVM as the TCP server, calling its processor directly.
+     */
+    static GatewayServer create(int httpPort, TaskRequestProcessor taskProcessor) {
+        return create(httpPort, new GatewayHandler("localhost", 8080, taskProcessor));
+    }
+
+    private static GatewayServer create(int httpPort, GatewayHandler handler) {
+        String engine = System.getProperty("netstream.gateway.engine", "blocking");
+        switch (engine) {
+            case "nio":
+                return new NioHttpGateway(httpPort, handler);
+            case "blocking":
+                return new HttpGateway(httpPort, handler);
+            default:
+                System.err.println("[ERROR] Unknown gateway engine '" + engine + "', using blocking");
+                return new HttpGateway(httpPort, handler);
+        }
+    }
+}
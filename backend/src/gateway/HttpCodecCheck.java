@@ -0,0 +1,238 @@
+package gateway;
+
+import com.google.gson.JsonObject;
+import shared.JsonUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the gateway's HTTP framing with multi-megabyte and multibyte payloads: request
+ * bodies by Content-Length and chunked, read through HttpRequestReader and
+ * ChunkedBodyDecoder in random-sized pieces, and responses written by HttpResponse. With a
+ * port it also sends such a task through a running gateway and reads it back, as
+ * Content-Length (HTTP/1.0) and chunked (HTTP/1.1). Exits with status 1 on a mismatch.
+ *
+ *   java gateway.HttpCodecCheck [megabytes] [gatewayPort]
+ */
+public class HttpCodecCheck {
+    // 1, 2, 3 and 4-byte UTF-8 characters, so chunk and read boundaries fall inside them
+    private static final String TEXT = "Task ✓ for Zürich 😀 日本語 — ";
+    private static final Random RANDOM = new Random(42);
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        String description = payload(megabytes * 1024 * 1024);
+        String body = "{\"action\":\"CREATE_TASK\",\"data\":{\"title\":\"Big ✓\",\"assignee\":\"check\","
+                + "\"deadline\":\"2025-12-01\",\"description\":\"" + description + "\"}}";
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        System.out.printf("[Check] Body of %,d chars, %,d UTF-8 bytes%n", body.length(), bodyBytes.length);
+
+        checkRequest("Content-Length body", contentLengthRequest(bodyBytes), body);
+        checkRequest("chunked body", chunkedRequest(bodyBytes), body);
+        checkRequest("pipelined after chunked body", concat(chunkedRequest(bodyBytes),
+                contentLengthRequest("{\"action\":\"GET_TASKS\"}".getBytes(StandardCharsets.UTF_8))), body);
+        checkResponse("Content-Length response", body, false);
+        checkResponse("chunked response", body, true);
+
+        if (args.length > 1) {
+            checkGateway(Integer.parseInt(args[1]), body, description);
+        }
+
+        System.out.println(failures == 0 ? "[Check] All checks passed" : "[Check] " + failures + " check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static String payload(int chars) {
+        StringBuilder text = new StringBuilder(chars + TEXT.length());
+        while (text.length() < chars) {
+            text.append(TEXT);
+        }
+        return text.toString();
+    }
+
+    private static byte[] contentLengthRequest(byte[] body) {
+        String head = "POST / HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n";
+        return concat(head.getBytes(StandardCharsets.US_ASCII), body);
+    }
+
+    // Random chunk sizes, an extension on some size lines, and a trailer
+    private static byte[] chunkedRequest(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + body.length / 100);
+        out.writeBytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        int offset = 0;
+        while (offset < body.length) {
+            int size = Math.min(body.length - offset, 1 + RANDOM.nextInt(70000));
+            String sizeLine = Integer.toHexString(size).toUpperCase(Locale.ROOT) + (RANDOM.nextBoolean() ? ";ext=1" : "");
+            out.writeBytes((sizeLine + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.write(body, offset, size);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+            offset += size;
+        }
+        out.writeBytes("0\r\nX-Trailer: done\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        return out.toByteArray();
+    }
+
+    // Parse the first request from 'raw', handed over in random-sized reads
+    private static void checkRequest(String name, byte[] raw, String expectedBody) throws IOException {
+        long start = System.nanoTime();
+        HttpRequestReader reader = new HttpRequestReader(new TrickleInputStream(raw));
+        HttpRequest request = HttpRequest.fromRequestLine(reader.readLine(), "check");
+        String line;
+        while (!(line = reader.readLine()).isEmpty()) {
+            request.header(line);
+        }
+        request.checkFraming();
+        String body = reader.readBody(request);
+        report(name, expectedBody.equals(body), start);
+        if (name.startsWith("pipelined")) {
+            report("  next request line", "POST / HTTP/1.1".equals(reader.readLine()), start);
+        }
+    }
+
+    // Write a response and decode it again from its bytes
+    private static void checkResponse(String name, String body, boolean chunked) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpResponse.of("200 OK", body, true, chunked).writeTo(out);
+        InputStream in = new TrickleInputStream(out.toByteArray());
+        Map<String, String> headers = readHead(in);
+        report(name, body.equals(readBody(in, headers)), start);
+    }
+
+    // A multi-MB task through the gateway, then read back both ways
+    private static void checkGateway(int port, String createBody, String description) throws IOException {
+        long start = System.nanoTime();
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+
+            out.write(chunkedRequest(createBody.getBytes(StandardCharsets.UTF_8)));
+            out.flush();
+            Map<String, String> headers = readHead(in);
+            JsonObject created = JsonUtils.parseJson(readBody(in, headers)).getAsJsonObject();
+            boolean ok = "success".equals(created.get("status").getAsString());
+            report("gateway: chunked CREATE_TASK", ok, start);
+            if (!ok) {
+                System.out.println("[Check]   " + created);
+                return;
+            }
+            String taskId = created.getAsJsonObject("data").get("taskId").getAsString();
+            String get = "{\"action\":\"GET_TASK\",\"data\":{\"taskId\":\"" + taskId + "\"}}";
+
+            start = System.nanoTime();
+            out.write(contentLengthRequest(get.getBytes(StandardCharsets.UTF_8)));
+            out.flush();
+            headers = readHead(in);
+            String response = readBody(in, headers);
+            report("gateway: GET_TASK, HTTP/1.1 ("
+                    + (headers.containsKey("transfer-encoding") ? "chunked" : "Content-Length") + ")",
+                    descriptionOf(response).equals(description), start);
+        }
+        try (Socket socket = new Socket("localhost", port)) {
+            start = System.nanoTime();
+            String create = "{\"action\":\"CREATE_TASK\",\"data\":{\"title\":\"Big ✓\",\"assignee\":\"check\","
+                    + "\"deadline\":\"2025-12-01\",\"description\":\"" + description + "\"}}";
+            byte[] request = contentLengthRequest(create.getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().write(new String(request, StandardCharsets.ISO_8859_1)
+                    .replaceFirst("HTTP/1.1", "HTTP/1.0").getBytes(StandardCharsets.ISO_8859_1));
+            InputStream in = socket.getInputStream();
+            Map<String, String> headers = readHead(in);
+            String response = readBody(in, headers);
+            report("gateway: Content-Length CREATE_TASK, HTTP/1.0",
+                    response.contains("\"success\"") && headers.containsKey("content-length"), start);
+        }
+    }
+
+    private static String descriptionOf(String response) {
+        JsonObject task = JsonUtils.parseJson(response).getAsJsonObject().getAsJsonObject("data");
+        return task != null && task.has("description") ? task.get("description").getAsString() : "";
+    }
+
+    private static void report(String name, boolean ok, long start) {
+        if (!ok) {
+            failures++;
+        }
+        System.out.printf("[Check] %-48s %s (%d ms)%n", name, ok ? "OK" : "FAILED", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Status line and headers, names lower case; independent of the gateway's own reader
+    private static Map<String, String> readHead(InputStream in) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        String status = readAsciiLine(in);
+        headers.put(":status", status);
+        String line;
+        while (!(line = readAsciiLine(in)).isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    private static String readBody(InputStream in, Map<String, String> headers) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+            int size;
+            while ((size = Integer.parseInt(readAsciiLine(in).split(";")[0].trim(), 16)) > 0) {
+                body.write(in.readNBytes(size));
+                readAsciiLine(in);
+            }
+            while (!readAsciiLine(in).isEmpty()) {
+                // Trailers
+            }
+        } else {
+            int length = Integer.parseInt(headers.get("content-length"));
+            byte[] bytes = in.readNBytes(length);
+            if (bytes.length < length) {
+                throw new EOFException("Response body ended after " + bytes.length + " of " + length + " bytes");
+            }
+            body.write(bytes);
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String readAsciiLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Connection closed inside a line");
+            }
+            line.append((char) b);
+        }
+        int end = line.length() > 0 && line.charAt(line.length() - 1) == '\r' ? line.length() - 1 : line.length();
+        return line.substring(0, end);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    /**
+     * Returns at most a random 1..8192 bytes per read, like a socket would.
+     */
+    private static final class TrickleInputStream extends ByteArrayInputStream {
+        TrickleInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1 + RANDOM.nextInt(8192)));
+        }
+    }
+}
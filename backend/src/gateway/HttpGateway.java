@@ -3,42 +3,61 @@ package gateway;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ExecutorService;
-import shared.DataStore;
-import shared.JsonUtils;
+import java.util.concurrent.RejectedExecutionException;
 import shared.NotificationBroadcaster;
 import threading.ThreadPoolManager;
 import threading.ExceptionHandler;
 import shared.MetricsRegistry;
 
-public class HttpGateway {
+/**
+ * Blocking gateway engine (the default): one thread per browser connection, held for as
+ * long as the connection stays open. See GatewayServer and GatewayHandler.
+ */
+public class HttpGateway implements GatewayServer {
+    // Connections run on ThreadPoolManager's connection pool, not the fixed worker pool: a
+    // kept-alive or SSE connection holds its thread while idle. Beyond MAX_CONNECTIONS open
+    // ones a new connection gets 503.
+    private static final int MAX_CONNECTIONS = Integer.getInteger("netstream.gateway.maxConnections", 1000);
+
     private final int httpPort;
-    private final String tcpHost;
-    private final int tcpPort;
+    private final GatewayHandler handler;
     private ServerSocket serverSocket;
     private volatile boolean running = false;
-    private ExecutorService threadPool;
+    private ExecutorService connectionPool;
 
-    public HttpGateway(int httpPort, String tcpHost, int tcpPort) {
+    HttpGateway(int httpPort, GatewayHandler handler) {
         this.httpPort = httpPort;
-        this.tcpHost = tcpHost;
-        this.tcpPort = tcpPort;
+        this.handler = handler;
     }
 
+    @Override
     public void start() {
         try {
             serverSocket = new ServerSocket(httpPort);
             running = true;
-            threadPool = ThreadPoolManager.getThreadPool();
+            connectionPool = ThreadPoolManager.getConnectionPool();
             System.out.println("[INFO] HTTP Gateway started on port " + httpPort);
-            System.out.println("[INFO] Forwarding to TCP server at " + tcpHost + ":" + tcpPort);
+            handler.logRouting();
 
             while (running) {
                 try {
                     Socket browserClient = serverSocket.accept();
-                    threadPool.submit(() -> handleBrowserRequest(browserClient));
                     MetricsRegistry.httpConnections.incrementAndGet();
-                    MetricsRegistry.httpActiveConnections.incrementAndGet();
+                    if (MetricsRegistry.httpActiveConnections.incrementAndGet() > MAX_CONNECTIONS) {
+                        MetricsRegistry.httpActiveConnections.decrementAndGet();
+                        sendServiceUnavailable(browserClient);
+                        continue;
+                    }
+                    try {
+                        connectionPool.submit(() -> handleBrowserRequest(browserClient));
+                    } catch (RejectedExecutionException e) {
+                        // Shutting down
+                        MetricsRegistry.httpActiveConnections.decrementAndGet();
+                        sendServiceUnavailable(browserClient);
+                    }
                 } catch (IOException e) {
                     // If serverSocket was closed as part of shutdown, accept() will throw.
                     // Only treat as an error if the gateway is still meant to be running.
@@ -54,81 +73,46 @@ public class HttpGateway {
         }
     }
 
+    /**
+     * Serve one browser connection: HTTP/1.1 requests one after another, pipelined ones
+     * answered in order, until the client asks to close, stays idle for KEEP_ALIVE_MS or
+     * reaches MAX_REQUESTS_PER_CONNECTION. HTTP/1.0 clients get one request unless they
+     * send "Connection: keep-alive".
+     */
     private void handleBrowserRequest(Socket browserClient) {
         try (
-                BufferedReader browserIn = new BufferedReader(
-                        new InputStreamReader(browserClient.getInputStream()));
-                PrintWriter browserOut = new PrintWriter(browserClient.getOutputStream(), true)) {
-        MetricsRegistry.httpRequests.incrementAndGet();
-            // Read HTTP request from browser
-            String requestLine = browserIn.readLine();
-            System.out.println("[INFO] HTTP Request: " + requestLine);
-
-            // Quick route: GET /notifications -> return stored notifications
-            if (requestLine != null && requestLine.startsWith("GET /notifications ")) {
-                String jsonResponse = JsonUtils.createSuccessResponse(DataStore.getNotifications());
-                sendHttpResponse(browserOut, jsonResponse);
-                return;
-            }
-
-            // SSE endpoint: GET /events -> stream real-time notifications
-            if (requestLine != null && requestLine.startsWith("GET /events ")) {
-                handleEventStream(browserClient, browserIn, browserOut);
-                return;
-            }
-
-            // Parse the request path
-            String requestPath = "/";
-            if (requestLine != null && requestLine.contains(" ")) {
-                String[] parts = requestLine.split(" ");
-                if (parts.length >= 2) {
-                    requestPath = parts[1];
+                InputStream socketIn = browserClient.getInputStream();
+                OutputStream browserOut = new BufferedOutputStream(browserClient.getOutputStream())) {
+            browserClient.setSoTimeout(GatewayHandler.KEEP_ALIVE_MS);
+            HttpRequestReader browserIn = new HttpRequestReader(socketIn);
+            int served = 0;
+            boolean keepAlive = true;
+            while (running && keepAlive) {
+                String requestLine;
+                try {
+                    requestLine = browserIn.readLine();
+                } catch (HttpRequest.RejectedException e) {
+                    e.response().writeTo(browserOut);
+                    break;
                 }
-            }
-
-            // Read and skip HTTP headers
-            String line;
-            int contentLength = 0;
-            while ((line = browserIn.readLine()) != null && !line.isEmpty()) {
-                if (line.startsWith("Content-Length:")) {
-                    contentLength = Integer.parseInt(line.substring(15).trim());
+                if (requestLine == null) {
+                    break; // Closed between requests
+                }
+                if (requestLine.isEmpty()) {
+                    continue; // Stray CRLF after the previous request
+                }
+                served++;
+                keepAlive = serveRequest(browserClient, requestLine, browserIn, browserOut,
+                        served < GatewayHandler.MAX_REQUESTS_PER_CONNECTION);
+                // Pipelined requests: answer those already received before flushing
+                if (!browserIn.ready()) {
+                    browserOut.flush();
                 }
             }
+            browserOut.flush();
 
-            // Handle OPTIONS request (CORS preflight)
-            if (requestLine != null && requestLine.startsWith("OPTIONS")) {
-                sendCorsResponse(browserOut);
-                return;
-            }
-
-            // Read JSON body from browser
-            String jsonBody = "";
-            if (contentLength > 0) {
-                char[] buffer = new char[contentLength];
-                browserIn.read(buffer, 0, contentLength);
-                jsonBody = new String(buffer);
-                MetricsRegistry.httpBytesIn.addAndGet(contentLength);
-            }
-
-            System.out.println("[DEBUG] Request Path: " + requestPath);
-            System.out.println("[DEBUG] JSON Body: " + jsonBody);
-
-            // Route to appropriate service based on path
-            String response;
-            if (requestPath.startsWith("/url-service")) {
-                // Forward to URL Service (port 8082)
-                response = forwardToService("localhost", 8082, jsonBody);
-            } else {
-                // Forward to TCP server (port 8080)
-                response = forwardToService(tcpHost, tcpPort, jsonBody);
-            }
-
-            // Send HTTP response back to browser
-            sendHttpResponse(browserOut, response);
-            if (response != null) {
-                MetricsRegistry.httpBytesOut.addAndGet(response.length());
-            }
-
+        } catch (SocketTimeoutException e) {
+            // Idle keep-alive connection; closing it is routine
         } catch (IOException e) {
             ExceptionHandler.handle(e, "Gateway handling browser request");
         } finally {
@@ -141,76 +125,100 @@ public class HttpGateway {
         }
     }
 
-    private String forwardToService(String host, int port, String jsonRequest) {
-        try (
-                Socket socket = new Socket(host, port);
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader in = new BufferedReader(
-                        new InputStreamReader(socket.getInputStream()))) {
-            // Send JSON to service
-            out.println(jsonRequest);
-            out.println(); // Empty line to indicate end of request
-            System.out.println("[DEBUG] Forwarded to " + host + ":" + port + " -> " + jsonRequest);
+    /**
+     * Read the rest of one request (headers, body) and answer it. Returns whether the
+     * connection stays open for another request.
+     */
+    private boolean serveRequest(Socket browserClient, String requestLine, HttpRequestReader browserIn,
+                                 OutputStream browserOut, boolean mayKeepAlive) throws IOException {
+        MetricsRegistry.httpRequests.incrementAndGet();
+        System.out.println("[INFO] HTTP Request: " + requestLine);
+        HttpRequest request;
+        try {
+            request = readRequest(requestLine, browserClient.getInetAddress().getHostAddress(), browserIn);
+        } catch (HttpRequest.RejectedException e) {
+            e.response().writeTo(browserOut);
+            return false;
+        }
+        if (request == null) {
+            return false; // Closed in the middle of the headers
+        }
+        boolean keepAlive = request.keepAlive(mayKeepAlive);
+
+        // SSE endpoint: GET /events -> stream real-time notifications; takes over the connection
+        if (GatewayHandler.isEventStream(request)) {
+            HttpResponse refusal = handler.admitEventStream(request, keepAlive);
+            if (refusal != null) {
+                refusal.writeTo(browserOut);
+                return keepAlive;
+            }
+            handleEventStream(browserClient, browserOut);
+            return false;
+        }
 
-            // Read JSON response from service
-            String response = in.readLine();
-            System.out.println("[DEBUG] Received from " + host + ":" + port + " -> " + response);
+        handler.respond(request, keepAlive).writeTo(browserOut);
+        return keepAlive;
+    }
 
-            return response != null ? response : "{\"status\":\"error\",\"message\":\"No response from server\"}";
+    // Headers and body of the request 'requestLine' starts; null if the connection closed in the headers
+    private static HttpRequest readRequest(String requestLine, String client, HttpRequestReader browserIn)
+            throws IOException {
+        HttpRequest request = HttpRequest.fromRequestLine(requestLine, client);
+        if (request == null) {
+            throw HttpRequest.RejectedException.badRequest("Malformed request line");
+        }
 
-        } catch (IOException e) {
-            ExceptionHandler.handle(e, "Gateway forwarding to service " + host + ":" + port);
-            return "{\"status\":\"error\",\"message\":\"Cannot connect to service at " + host + ":" + port + "\"}";
+        // Read HTTP headers
+        int headBytes = requestLine.length();
+        String line;
+        while ((line = browserIn.readLine()) != null && !line.isEmpty()) {
+            headBytes += line.length();
+            if (headBytes > HttpRequest.MAX_HEAD_BYTES) {
+                throw HttpRequest.RejectedException.headTooLarge();
+            }
+            request.header(line);
         }
-    }
+        if (line == null) {
+            return null;
+        }
+        request.checkFraming();
 
-    private void sendCorsResponse(PrintWriter out) {
-        out.println("HTTP/1.1 204 No Content");
-        out.println("Access-Control-Allow-Origin: *");
-        out.println("Access-Control-Allow-Methods: POST, GET, OPTIONS");
-        out.println("Access-Control-Allow-Headers: Content-Type");
-        out.println();
-        out.flush();
+        // Read JSON body from browser
+        request.body = browserIn.readBody(request);
+        return request;
     }
 
-    private void sendHttpResponse(PrintWriter out, String jsonResponse) {
-        // Send HTTP headers
-        out.println("HTTP/1.1 200 OK");
-        out.println("Content-Type: application/json");
-        out.println("Access-Control-Allow-Origin: *");
-        out.println("Access-Control-Allow-Methods: POST, GET, OPTIONS");
-        out.println("Access-Control-Allow-Headers: Content-Type");
-        out.println("Content-Length: " + jsonResponse.length());
-        out.println();
-        out.println(jsonResponse);
-        out.flush();
+    // Answered from the accept thread, so kept to one small write
+    private void sendServiceUnavailable(Socket browserClient) {
+        try (Socket socket = browserClient) {
+            socket.setSoTimeout(1000);
+            OutputStream out = socket.getOutputStream();
+            GatewayHandler.serviceUnavailable().writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            // Client is gone already
+        }
     }
 
     /**
      * Handle Server-Sent Events (SSE) stream for real-time notifications
      * Network concept: Persistent HTTP connection with chunked transfer
      */
-    private void handleEventStream(Socket socket, BufferedReader in, PrintWriter out) {
+    private void handleEventStream(Socket socket, OutputStream browserOut) {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(browserOut, StandardCharsets.UTF_8), true);
         try {
-            // Skip remaining HTTP headers
-            String line;
-            while ((line = in.readLine()) != null && !line.isEmpty()) {
-                // Skip headers
-            }
+            // No read timeout from here on: the client only listens
+            socket.setSoTimeout(0);
 
             // Send SSE headers
-            out.println("HTTP/1.1 200 OK");
-            out.println("Content-Type: text/event-stream");
-            out.println("Cache-Control: no-cache");
-            out.println("Connection: keep-alive");
-            out.println("Access-Control-Allow-Origin: *");
-            out.println();
-            out.flush();
+            browserOut.write(GatewayHandler.EVENT_STREAM_HEAD);
+            browserOut.flush();
 
             System.out.println("[SSE] Client connected for event stream");
 
             // Register client with broadcaster
             NotificationBroadcaster.addHttpClient(out);
+            MetricsRegistry.httpEventStreams.incrementAndGet();
 
             // Keep connection alive - send periodic heartbeat
             while (!socket.isClosed() && socket.isConnected()) {
@@ -228,7 +236,9 @@ public class HttpGateway {
         } catch (IOException e) {
             System.out.println("[SSE] Client disconnected: " + e.getMessage());
         } finally {
-            NotificationBroadcaster.removeHttpClient(out);
+            if (NotificationBroadcaster.removeHttpClient(out)) {
+                MetricsRegistry.httpEventStreams.decrementAndGet();
+            }
             try {
                 socket.close();
             } catch (IOException e) {
@@ -237,12 +247,14 @@ public class HttpGateway {
         }
     }
 
+    @Override
     public void stop() {
         running = false;
         try {
             if (serverSocket != null) {
                 serverSocket.close();
             }
+            handler.close();
             ThreadPoolManager.shutdown();
         } catch (IOException e) {
             ExceptionHandler.handle(e, "Gateway stopping");
@@ -250,7 +262,7 @@ public class HttpGateway {
     }
 
     public static void main(String[] args) {
-        HttpGateway gateway = new HttpGateway(3000, "localhost", 8080);
+        GatewayServer gateway = GatewayServer.create(3000, "localhost", 8080);
         gateway.start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package gateway;
+
+import shared.JsonUtils;
+
+import java.net.ProtocolException;
+
+/**
+ * One browser request as the gateway engines hand it to GatewayHandler: the request line,
+ * the few headers the gateway acts on, and the body.
+ */
+final class HttpRequest {
+    // Limits on what the engines read: the head (request line and headers) and the body
+    static final int MAX_HEAD_BYTES = 64 * 1024;
+    static final int MAX_BODY_BYTES = Integer.getInteger("netstream.gateway.maxBodyBytes", 16 * 1024 * 1024);
+
+    /**
+     * A request the gateway will not read further. It is answered with 'status' and the
+     * connection is closed, since the rest of its bytes cannot be framed.
+     */
+    static final class RejectedException extends ProtocolException {
+        private static final long serialVersionUID = 1L;
+
+        final String status;
+
+        RejectedException(String status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        static RejectedException badRequest(String message) {
+            return new RejectedException("400 Bad Request", message);
+        }
+
+        static RejectedException headTooLarge() {
+            return new RejectedException("431 Request Header Fields Too Large", "Request headers too large");
+        }
+
+        static RejectedException bodyTooLarge() {
+            return new RejectedException("413 Payload Too Large", "Request body too large");
+        }
+
+        HttpResponse response() {
+            return HttpResponse.of(status, JsonUtils.createErrorResponse(getMessage()), false, false);
+        }
+    }
+
+    final String method;
+    final String path;
+    final boolean http10;
+    String client; // rate limit key: the remote address, or "user:<name>" from USER_HEADER
+    String connection = ""; // Connection header, lower case
+    int contentLength; // -1 if the header was not a number
+    boolean chunked; // Transfer-Encoding: chunked, which overrides Content-Length
+    String body = "";
+
+    private HttpRequest(String method, String path, boolean http10, String client) {
+        this.method = method;
+        this.path = path;
+        this.http10 = http10;
+        this.client = client;
+    }
+
+    /**
+     * The request started by 'requestLine', or null if that is not an HTTP/1.x request line.
+     */
+    static HttpRequest fromRequestLine(String requestLine, String remoteAddress) {
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+            return null;
+        }
+        return new HttpRequest(parts[0], parts[1], "HTTP/1.0".equals(parts[2]), remoteAddress);
+    }
+
+    /**
+     * Take in one header line; headers the gateway does not use are ignored.
+     */
+    void header(String line) {
+        int colon = line.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        String name = line.substring(0, colon).trim();
+        String value = line.substring(colon + 1).trim();
+        if (name.equalsIgnoreCase("Content-Length")) {
+            try {
+                contentLength = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                contentLength = -1;
+            }
+        } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+            chunked = value.toLowerCase().contains("chunked");
+        } else if (name.equalsIgnoreCase("Connection")) {
+            connection = value.toLowerCase();
+        } else if (GatewayHandler.USER_HEADER != null && name.equalsIgnoreCase(GatewayHandler.USER_HEADER)
+                && !value.isEmpty()) {
+            client = "user:" + value;
+        }
+    }
+
+    /**
+     * Check the body framing once the headers are in.
+     *
+     * @throws RejectedException if the Content-Length is invalid or over MAX_BODY_BYTES
+     */
+    void checkFraming() throws RejectedException {
+        if (chunked) {
+            return; // Checked as the chunks arrive
+        }
+        if (contentLength < 0) {
+            throw RejectedException.badRequest("Invalid Content-Length");
+        }
+        if (contentLength > MAX_BODY_BYTES) {
+            throw RejectedException.bodyTooLarge();
+        }
+    }
+
+    /**
+     * Whether the connection stays open after this request: HTTP/1.1 unless the client
+     * sent "Connection: close", HTTP/1.0 only with "Connection: keep-alive".
+     */
+    boolean keepAlive(boolean mayKeepAlive) {
+        return mayKeepAlive && (http10 ? connection.contains("keep-alive") : !connection.contains("close"));
+    }
+}
@@ -0,0 +1,141 @@
+package gateway;
+
+import shared.MetricsRegistry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads HTTP requests from a browser connection as bytes (the blocking engine). Lines are
+ * split on LF, bodies are read by their length in bytes, or decoded from chunks, straight
+ * into one array and decoded as UTF-8 once.
+ */
+final class HttpRequestReader {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    HttpRequestReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * The next line without its CRLF or LF, or null if the stream ended before one started.
+     *
+     * @throws HttpRequest.RejectedException (431) if the line exceeds HttpRequest.MAX_HEAD_BYTES
+     * @throws EOFException                  if the stream ended inside the line
+     */
+    String readLine() throws IOException {
+        byte[] line = null; // only used once a line outgrows what is buffered
+        int lineLength = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                if (lineLength == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed inside a request line");
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            int length = position - start;
+            boolean found = position < limit;
+            if (found) {
+                position++; // the LF
+            }
+            if (line == null && found) {
+                return decodeLine(buffer, start, length);
+            }
+            if (lineLength + length > HttpRequest.MAX_HEAD_BYTES) {
+                throw HttpRequest.RejectedException.headTooLarge();
+            }
+            if (line == null) {
+                line = new byte[Math.max(2 * length, 256)];
+            } else if (lineLength + length > line.length) {
+                line = Arrays.copyOf(line, Math.max(2 * line.length, lineLength + length));
+            }
+            System.arraycopy(buffer, start, line, lineLength, length);
+            lineLength += length;
+            if (found) {
+                return decodeLine(line, 0, lineLength);
+            }
+        }
+    }
+
+    private static String decodeLine(byte[] data, int offset, int length) {
+        if (length > 0 && data[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The body of 'request', read by its Content-Length or decoded from chunks.
+     *
+     * @throws HttpRequest.RejectedException if the chunks are malformed or exceed MAX_BODY_BYTES
+     * @throws EOFException                  if the connection closed before the body ended
+     */
+    String readBody(HttpRequest request) throws IOException {
+        if (request.chunked) {
+            return readChunked();
+        }
+        int length = request.contentLength;
+        if (length == 0) {
+            return "";
+        }
+        byte[] body = new byte[length];
+        // What is buffered first, then straight from the stream into the body
+        int read = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, body, 0, read);
+        position += read;
+        while (read < length) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Request body ended after " + read + " of " + length + " bytes");
+            }
+            read += n;
+        }
+        MetricsRegistry.httpBytesIn.addAndGet(length);
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readChunked() throws IOException {
+        ChunkedBodyDecoder decoder = new ChunkedBodyDecoder();
+        while (!decoder.isComplete()) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Chunked request body ended after " + decoder.size() + " bytes");
+            }
+            position += decoder.decode(buffer, position, limit - position);
+            if (decoder.size() > HttpRequest.MAX_BODY_BYTES) {
+                throw HttpRequest.RejectedException.bodyTooLarge();
+            }
+        }
+        MetricsRegistry.httpBytesIn.addAndGet(decoder.size());
+        return decoder.body();
+    }
+
+    /**
+     * Whether more bytes can be read without blocking (a pipelined request).
+     */
+    boolean ready() throws IOException {
+        return position < limit || in.available() > 0;
+    }
+
+    // Refill the empty buffer; false at the end of the stream
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+package gateway;
+
+import shared.MetricsRegistry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One gateway response, kept as its head and its body rather than one array, so writing it
+ * copies neither. A body is sent with Content-Length in UTF-8 bytes, or with chunked
+ * transfer encoding: then it is encoded CHUNK_SIZE bytes at a time while being written, and
+ * its full UTF-8 form never exists in memory.
+ */
+final class HttpResponse {
+    static final int CHUNK_SIZE = 16 * 1024;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    /**
+     * Where the pieces of a response go: a socket stream, or a write queue.
+     */
+    interface Sink {
+        void write(ByteBuffer buffer) throws IOException;
+    }
+
+    private final byte[] head;
+    private final byte[] body; // Content-Length body, or null
+    private final String chunkedBody; // body sent chunked, or null
+
+    private HttpResponse(byte[] head, byte[] body, String chunkedBody) {
+        this.head = head;
+        this.body = body;
+        this.chunkedBody = chunkedBody;
+    }
+
+    /**
+     * Bytes already formatted as a response (or a response head, such as an event stream's).
+     */
+    static HttpResponse preformatted(byte[] bytes) {
+        return new HttpResponse(bytes, null, null);
+    }
+
+    /**
+     * A response with a JSON body (or none if null). With 'chunked' the body is streamed with
+     * Transfer-Encoding: chunked; only HTTP/1.1 clients understand that.
+     */
+    static HttpResponse of(String status, String body, boolean keepAlive, boolean chunked, String... extraHeaders) {
+        byte[] content = body == null || chunked ? null : body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append("\r\n");
+        head.append("Access-Control-Allow-Origin: *\r\n");
+        head.append("Access-Control-Allow-Methods: POST, GET, OPTIONS\r\n");
+        for (String header : extraHeaders) {
+            head.append(header).append("\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Type: application/json\r\n");
+            if (chunked) {
+                head.append("Transfer-Encoding: chunked\r\n");
+            } else {
+                head.append("Content-Length: ").append(content.length).append("\r\n");
+            }
+        }
+        if (keepAlive) {
+            head.append("Connection: keep-alive\r\n");
+            head.append("Keep-Alive: timeout=").append(GatewayHandler.KEEP_ALIVE_MS / 1000).append("\r\n");
+        } else {
+            head.append("Connection: close\r\n");
+        }
+        head.append("\r\n");
+        if (content != null) {
+            MetricsRegistry.httpBytesOut.addAndGet(content.length);
+        }
+        return new HttpResponse(head.toString().getBytes(StandardCharsets.US_ASCII), content,
+                body != null && chunked ? body : null);
+    }
+
+    /**
+     * Hand the response to 'sink' piece by piece: the head, then the body or its chunks.
+     * Nothing follows the body, so the next response on the connection starts right after.
+     */
+    void writeTo(Sink sink) throws IOException {
+        sink.write(ByteBuffer.wrap(head));
+        if (body != null) {
+            sink.write(ByteBuffer.wrap(body));
+        } else if (chunkedBody != null) {
+            writeChunks(sink);
+        }
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        writeTo(buffer -> out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()));
+    }
+
+    // Encode the body straight into chunk-sized buffers; a surrogate pair is never split
+    private void writeChunks(Sink sink) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.wrap(chunkedBody);
+        long bytes = 0;
+        boolean done = false;
+        while (!done) {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            CoderResult result = encoder.encode(chars, chunk, true);
+            if (result.isUnderflow()) {
+                encoder.flush(chunk);
+                done = true;
+            }
+            chunk.flip();
+            if (chunk.hasRemaining()) {
+                bytes += chunk.remaining();
+                sink.write(ByteBuffer.wrap((Integer.toHexString(chunk.remaining()) + "\r\n")
+                        .getBytes(StandardCharsets.US_ASCII)));
+                sink.write(chunk);
+                sink.write(ByteBuffer.wrap(CRLF));
+            }
+        }
+        sink.write(ByteBuffer.wrap(LAST_CHUNK));
+        MetricsRegistry.httpBytesOut.addAndGet(bytes);
+    }
+}
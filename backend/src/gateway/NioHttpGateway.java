@@ -0,0 +1,595 @@
+package gateway;
+
+import shared.MetricsRegistry;
+import shared.NotificationBroadcaster;
+import threading.ExceptionHandler;
+import threading.ThreadPoolManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking gateway engine (-Dnetstream.gateway.engine=nio).
+ *
+ * One thread accepts connections and hands them round-robin to SELECTOR_THREADS selector
+ * loops, as in NioTaskServer. A selector loop parses requests incrementally from each
+ * connection's buffer and writes queued responses; GatewayHandler.respond() runs on the
+ * shared worker pool, since it may wait for a backend. Pipelined requests are answered in
+ * order.
+ *
+ * An event stream (GET /events) costs its buffers and no thread: the loop owning the
+ * connection writes each notification to it, and a once-a-second timer sends heartbeats
+ * and closes idle keep-alive connections. A subscriber that falls MAX_EVENT_BACKLOG bytes
+ * behind is disconnected rather than buffered without bound.
+ */
+public class NioHttpGateway implements GatewayServer {
+    private static final int MAX_CONNECTIONS = Integer.getInteger("netstream.gateway.maxConnections", 50000);
+    private static final int SELECTOR_THREADS = Integer.getInteger("netstream.gateway.selectorThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int READ_BUFFER_SIZE = 4096;
+    // Pipelined requests accepted before reading pauses until some are answered
+    private static final int MAX_IN_FLIGHT = 16;
+    private static final long MAX_EVENT_BACKLOG = 1024 * 1024;
+    private static final long TIMER_MS = 1000;
+    private static final long HEARTBEAT_MS = 30000;
+
+    private final int httpPort;
+    private final GatewayHandler handler;
+    private final Consumer<String> eventListener = this::broadcast;
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private SelectorLoop[] loops;
+    private ExecutorService workerPool;
+    private volatile boolean running = false;
+
+    NioHttpGateway(int httpPort, GatewayHandler handler) {
+        this.httpPort = httpPort;
+        this.handler = handler;
+    }
+
+    @Override
+    public void start() {
+        try {
+            workerPool = ThreadPoolManager.getThreadPool();
+            acceptSelector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(httpPort), 1024);
+            serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+            running = true;
+
+            loops = new SelectorLoop[SELECTOR_THREADS];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new SelectorLoop();
+                Thread t = new Thread(loops[i], "HTTP-Selector-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+            NotificationBroadcaster.addListener(eventListener);
+
+            System.out.println("[INFO] HTTP Gateway (nio) started on port " + httpPort
+                    + " with " + SELECTOR_THREADS + " selector thread(s)");
+            handler.logRouting();
+
+            int next = 0;
+            while (running) {
+                acceptSelector.select(1000);
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    MetricsRegistry.httpConnections.incrementAndGet();
+                    if (MetricsRegistry.httpActiveConnections.incrementAndGet() > MAX_CONNECTIONS) {
+                        refuse(channel);
+                        continue;
+                    }
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    loops[next++ % loops.length].register(channel);
+                }
+            }
+
+        } catch (IOException | ClosedSelectorException e) {
+            // stop() closes the selector, possibly while select() is running
+            if (running) {
+                ExceptionHandler.handle(e, "Gateway (nio) startup");
+            } else {
+                System.out.println("[DEBUG] Gateway accept interrupted during shutdown: " + e.getMessage());
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    private void refuse(SocketChannel channel) {
+        try (SocketChannel c = channel) {
+            // Still in blocking mode; a short response fits in the socket buffer
+            GatewayHandler.serviceUnavailable().writeTo(buffer -> c.write(buffer));
+        } catch (IOException e) {
+            // Client is gone already
+        } finally {
+            MetricsRegistry.httpActiveConnections.decrementAndGet();
+        }
+    }
+
+    // Broadcaster thread: hand the event to every loop, which writes it to its streams
+    private void broadcast(String notification) {
+        byte[] event = GatewayHandler.event(notification);
+        for (SelectorLoop loop : loops) {
+            loop.pendingEvents.add(event);
+            loop.selector.wakeup();
+        }
+    }
+
+    @Override
+    public void stop() {
+        boolean wasRunning = running;
+        running = false;
+        NotificationBroadcaster.removeListener(eventListener);
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+            if (acceptSelector != null && acceptSelector.isOpen()) {
+                acceptSelector.close();
+            }
+        } catch (IOException e) {
+            ExceptionHandler.handle(e, "Gateway stopping");
+        }
+        if (loops != null) {
+            for (SelectorLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+        }
+        if (wasRunning) {
+            handler.close();
+            ThreadPoolManager.shutdown();
+            System.out.println("[INFO] HTTP Gateway stopped");
+        }
+    }
+
+    /**
+     * One selector thread and the connections registered with it. Other threads only talk
+     * to it through the three queues plus wakeup().
+     */
+    private final class SelectorLoop implements Runnable {
+        final Selector selector;
+        final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+        final Queue<byte[]> pendingEvents = new ConcurrentLinkedQueue<>();
+        // Connections streaming events; selector thread only
+        final Set<Connection> eventStreams = new HashSet<>();
+
+        SelectorLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pendingRegistrations.add(channel);
+            selector.wakeup();
+        }
+
+        void requestFlush(Connection connection) {
+            pendingWrites.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastTick = System.currentTimeMillis();
+            try {
+                while (running) {
+                    selector.select(TIMER_MS);
+
+                    SocketChannel channel;
+                    while ((channel = pendingRegistrations.poll()) != null) {
+                        try {
+                            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                            key.attach(new Connection(this, channel, key));
+                        } catch (IOException e) {
+                            closeQuietly(channel);
+                            MetricsRegistry.httpActiveConnections.decrementAndGet();
+                        }
+                    }
+
+                    Connection pending;
+                    while ((pending = pendingWrites.poll()) != null) {
+                        pending.onResponsesQueued();
+                    }
+
+                    byte[] event;
+                    while ((event = pendingEvents.poll()) != null) {
+                        // A copy: a subscriber too far behind leaves the set while we go
+                        for (Connection stream : new ArrayList<>(eventStreams)) {
+                            stream.send(event);
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastTick >= TIMER_MS) {
+                        lastTick = now;
+                        for (SelectionKey key : selector.keys()) {
+                            ((Connection) key.attachment()).onTimer(now);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                ExceptionHandler.handle(e, "Gateway selector loop");
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                closeQuietly(selector);
+            }
+        }
+    }
+
+    /**
+     * Per-connection state. Everything except complete() runs on the owning selector thread.
+     */
+    private final class Connection {
+        final SelectorLoop loop;
+        final SocketChannel channel;
+        final SelectionKey key;
+        final String client; // remote address, for rate limits
+        final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        final AtomicLong queuedBytes = new AtomicLong();
+        // Requests accepted but not yet answered (queued, processing, or response not yet queued)
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int scanned; // bytes at the start of readBuffer already searched for the end of the head
+        HttpRequest request; // head read, body still arriving
+        ChunkedBodyDecoder chunks; // the body of 'request' if it is chunked
+        // Responses are chained so they are written in arrival order
+        CompletableFuture<Void> inOrder = CompletableFuture.completedFuture(null);
+        int served;
+        long lastActivity = System.currentTimeMillis();
+        long lastHeartbeat;
+        boolean inputClosed;
+        boolean lastRequest; // a request without keep-alive was accepted: read no more
+        boolean eventStream; // GET /events accepted: stream once the responses before it are out
+        boolean streaming;
+        boolean readPaused;
+        boolean closed;
+        // Set once a response closing the connection is queued; later responses are dropped
+        volatile boolean finished;
+
+        Connection(SelectorLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.client = channel.socket().getInetAddress().getHostAddress();
+        }
+
+        void read() throws IOException {
+            int n = channel.read(readBuffer);
+            if (eventStream) {
+                // The client only listens from here on; anything it sends is ignored
+                readBuffer.clear();
+                if (n < 0) {
+                    close();
+                }
+                return;
+            }
+            if (n < 0) {
+                inputClosed = true;
+                disableRead();
+                closeIfDone();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processInput();
+        }
+
+        private boolean acceptsRequests() {
+            return !inputClosed && !lastRequest && !eventStream && !finished && !closed;
+        }
+
+        // Handle every complete request in readBuffer, unless reading is paused
+        private void processInput() {
+            byte[] data = readBuffer.array();
+            int end = readBuffer.position();
+            int start = 0;
+            try {
+                while (!readPaused && acceptsRequests()) {
+                    if (request == null) {
+                        // Stray CRLF after the previous request
+                        while (start < end && (data[start] == '\r' || data[start] == '\n')) {
+                            start++;
+                        }
+                        int headEnd = findHeadEnd(data, Math.max(start, scanned), start, end);
+                        if (headEnd < 0) {
+                            scanned = end;
+                            if (end - start > HttpRequest.MAX_HEAD_BYTES) {
+                                throw HttpRequest.RejectedException.headTooLarge();
+                            }
+                            break;
+                        }
+                        request = parseHead(new String(data, start, headEnd - start, StandardCharsets.UTF_8));
+                        chunks = request.chunked ? new ChunkedBodyDecoder() : null;
+                        start = headEnd;
+                    }
+                    if (chunks != null) {
+                        // Chunked body: the decoder keeps what has arrived, so nothing stays buffered
+                        start += chunks.decode(data, start, end - start);
+                        if (chunks.size() > HttpRequest.MAX_BODY_BYTES) {
+                            throw HttpRequest.RejectedException.bodyTooLarge();
+                        }
+                        if (!chunks.isComplete()) {
+                            break;
+                        }
+                        request.body = chunks.body();
+                        MetricsRegistry.httpBytesIn.addAndGet(chunks.size());
+                        chunks = null;
+                    } else if (end - start < request.contentLength) {
+                        break; // Body still arriving
+                    } else if (request.contentLength > 0) {
+                        request.body = new String(data, start, request.contentLength, StandardCharsets.UTF_8);
+                        MetricsRegistry.httpBytesIn.addAndGet(request.contentLength);
+                        start += request.contentLength;
+                    }
+                    scanned = start;
+                    dispatch(request);
+                    request = null;
+                }
+            } catch (HttpRequest.RejectedException e) {
+                reject(e.response());
+            }
+            if (closed) {
+                return;
+            }
+            // Drop handled requests, keep the partial one (and any left while paused)
+            readBuffer.flip();
+            readBuffer.position(start);
+            readBuffer.compact();
+            scanned = Math.max(0, scanned - start);
+            // Make room for a head, or a Content-Length body, larger than the buffer
+            int needed = request != null && chunks == null ? request.contentLength
+                    : readBuffer.hasRemaining() ? 0 : readBuffer.capacity() * 2;
+            if (needed > readBuffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(needed);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        // Index just past the blank line ending the head (CRLF CRLF or LF LF), or -1
+        private int findHeadEnd(byte[] data, int from, int start, int end) {
+            for (int i = from; i < end; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                if (i - 1 >= start && data[i - 1] == '\n') {
+                    return i + 1;
+                }
+                if (i - 2 >= start && data[i - 1] == '\r' && data[i - 2] == '\n') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        // The request the head starts
+        private HttpRequest parseHead(String head) throws HttpRequest.RejectedException {
+            String[] lines = head.split("\r?\n");
+            MetricsRegistry.httpRequests.incrementAndGet();
+            System.out.println("[INFO] HTTP Request: " + lines[0]);
+            HttpRequest parsed = HttpRequest.fromRequestLine(lines[0], client);
+            if (parsed == null) {
+                throw HttpRequest.RejectedException.badRequest("Malformed request line");
+            }
+            for (int i = 1; i < lines.length; i++) {
+                parsed.header(lines[i]);
+            }
+            parsed.checkFraming();
+            return parsed;
+        }
+
+        // Answer with 'response' after those already accepted, then close
+        private void reject(HttpResponse response) {
+            lastRequest = true;
+            disableRead();
+            inFlight.incrementAndGet();
+            inOrder = inOrder.thenRun(() -> complete(response, false));
+        }
+
+        private void dispatch(HttpRequest request) {
+            served++;
+            boolean keepAlive = request.keepAlive(served < GatewayHandler.MAX_REQUESTS_PER_CONNECTION);
+            if (!keepAlive) {
+                lastRequest = true;
+                disableRead();
+            }
+            inFlight.incrementAndGet();
+
+            if (GatewayHandler.isEventStream(request)) {
+                HttpResponse refusal = handler.admitEventStream(request, keepAlive);
+                if (refusal != null) {
+                    inOrder = inOrder.thenRun(() -> complete(refusal, keepAlive));
+                } else {
+                    eventStream = true;
+                    inOrder = inOrder.thenRun(() -> complete(HttpResponse.preformatted(GatewayHandler.EVENT_STREAM_HEAD), true));
+                }
+            } else {
+                // A rejected stage completes exceptionally instead of throwing
+                inOrder = inOrder.thenRunAsync(() -> complete(handler.respond(request, keepAlive), keepAlive), workerPool)
+                        .exceptionally(e -> {
+                            complete(GatewayHandler.serviceUnavailable(), false);
+                            return null;
+                        });
+            }
+            if (inFlight.get() >= MAX_IN_FLIGHT) {
+                readPaused = true;
+                disableRead();
+            }
+        }
+
+        /**
+         * Called from worker threads (or inline) with the response to one request, in order.
+         */
+        void complete(HttpResponse response, boolean keepAlive) {
+            if (!finished) {
+                finished = !keepAlive;
+                try {
+                    // Head and body (or each chunk) as separate buffers: nothing is copied
+                    response.writeTo(buffer -> {
+                        writeQueue.add(buffer);
+                        queuedBytes.addAndGet(buffer.remaining());
+                    });
+                } catch (IOException e) {
+                    // Queueing does not fail
+                }
+            }
+            // Decrement after queueing, so closeIfDone() never sees an unanswered request as done
+            inFlight.decrementAndGet();
+            loop.requestFlush(this);
+        }
+
+        // Selector thread, after complete() queued responses
+        void onResponsesQueued() {
+            if (closed) {
+                return;
+            }
+            if (eventStream && !streaming && !finished && inFlight.get() == 0) {
+                // The stream's head is queued: events may follow it
+                streaming = true;
+                lastHeartbeat = System.currentTimeMillis();
+                loop.eventStreams.add(this);
+                MetricsRegistry.httpEventStreams.incrementAndGet();
+                System.out.println("[SSE] Client connected for event stream");
+            }
+            if (readPaused && inFlight.get() < MAX_IN_FLIGHT) {
+                // Requests buffered while paused go first, so closeIfDone() below sees them in flight
+                readPaused = false;
+                processInput();
+                if (!readPaused && acceptsRequests()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        // Selector thread: one event (or heartbeat) for a streaming connection
+        void send(byte[] event) {
+            if (closed) {
+                return;
+            }
+            if (queuedBytes.get() + event.length > MAX_EVENT_BACKLOG) {
+                System.out.println("[SSE] Dropping subscriber " + client + ": " + queuedBytes.get() + " bytes behind");
+                close();
+                return;
+            }
+            writeQueue.add(ByteBuffer.wrap(event));
+            queuedBytes.addAndGet(event.length);
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.peek()) != null) {
+                int written = channel.write(buffer);
+                queuedBytes.addAndGet(-written);
+                if (buffer.hasRemaining()) {
+                    // Socket buffer full; continue when the selector reports it writable
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            lastActivity = System.currentTimeMillis();
+            closeIfDone();
+        }
+
+        private void closeIfDone() {
+            boolean noMoreInput = inputClosed || lastRequest || finished;
+            if (noMoreInput && !streaming && inFlight.get() == 0 && writeQueue.isEmpty()) {
+                close();
+            }
+        }
+
+        void onTimer(long now) {
+            if (streaming) {
+                if (now - lastHeartbeat >= HEARTBEAT_MS) {
+                    lastHeartbeat = now;
+                    send(GatewayHandler.HEARTBEAT);
+                }
+            } else if (inFlight.get() == 0 && writeQueue.isEmpty()
+                    && now - lastActivity > GatewayHandler.KEEP_ALIVE_MS) {
+                close(); // Idle between requests
+            }
+        }
+
+        private void disableRead() {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            closeQuietly(channel);
+            MetricsRegistry.httpActiveConnections.decrementAndGet();
+            if (streaming) {
+                loop.eventStreams.remove(this);
+                MetricsRegistry.httpEventStreams.decrementAndGet();
+            }
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing useful to do
+        }
+    }
+}
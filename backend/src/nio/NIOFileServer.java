@@ -2,6 +2,7 @@
 package nio;
 
 import com.google.gson.Gson;
+import shared.IdGenerator;
 import threading.ExceptionHandler;
 
 import java.io.*;
@@ -242,8 +243,7 @@ public class NIOFileServer {
                 fileName = "upload_" + System.currentTimeMillis();
             }
 
-            String fileId = "file_" + System.currentTimeMillis() + "_" +
-                    Integer.toHexString(fileName.hashCode());
+            String fileId = IdGenerator.next("file_");
             Path filePath = UPLOAD_DIR.resolve(fileId + "_" + sanitizeFileName(fileName));
 
             long totalBytes = saveFileUsingNIO(filePart.getInputStream(), filePath);
@@ -0,0 +1,560 @@
+package shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Secondary and sort indexes without per-task objects, for the mmap engine. Each task has a
+ * slot, and its indexed fields sit in primitive arrays at that slot: status and priority as
+ * bytes, assignee and deadline as codes into dictionaries of distinct values, createdAt and
+ * updatedAt as millis. That is about 35 bytes per task plus its id -> slot entry; the id
+ * strings are the ones the store already holds.
+ *
+ * A query is answered by one pass over the arrays, collecting the slots that match every
+ * filter, instead of from hash buckets. Each sort order is a SortedSlots: slot numbers in
+ * sorted chunks, 4 bytes per task, so a page is a binary search and a copy. Keys and
+ * cursors are the same as SkipListTaskIndex's, so both engines page identically.
+ *
+ * Writes take the write side of 'lock', passes the read side, so a pass sees each task
+ * either before or after a change.
+ */
+public class CompactTaskIndex implements TaskIndex {
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int PAGE_BATCH = 256;
+    private static final int CHUNK_SIZE = 512;
+    private static final int NONE = -1; // dictionary code of a null or empty value
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    // Per slot; ids[slot] == null marks a free slot
+    private String[] ids = new String[INITIAL_SLOTS];
+    private byte[] status = new byte[INITIAL_SLOTS]; // ordinal + 1, 0 = null
+    private byte[] priority = new byte[INITIAL_SLOTS]; // ordinal + 1, 0 = null (also the sort rank)
+    private int[] assignee = new int[INITIAL_SLOTS];
+    private int[] deadline = new int[INITIAL_SLOTS];
+    private long[] createdAt = new long[INITIAL_SLOTS];
+    private long[] updatedAt = new long[INITIAL_SLOTS];
+    private int slotCount; // slots in use or freed; passes stop here
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    private final Dictionary assignees = new Dictionary();
+    private final Dictionary deadlines = new Dictionary();
+    private final Map<SortField, SortedSlots> sorted = new EnumMap<>(SortField.class);
+
+    public CompactTaskIndex() {
+        for (SortField field : SortField.values()) {
+            sorted.put(field, new SortedSlots(field));
+        }
+    }
+
+    /**
+     * Distinct values of one string field. A code is freed once no task uses it, so the
+     * dictionary holds only values of live tasks.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int[] refs = new int[16];
+        private int[] freeCodes = new int[16];
+        private int freeCount;
+
+        int acquire(String value) {
+            if (value == null || value.isEmpty()) {
+                return NONE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                if (freeCount > 0) {
+                    code = freeCodes[--freeCount];
+                    values.set(code, value);
+                } else {
+                    code = values.size();
+                    values.add(value);
+                    if (code == refs.length) {
+                        refs = Arrays.copyOf(refs, code * 2);
+                    }
+                }
+                codes.put(value, code);
+            }
+            refs[code]++;
+            return code;
+        }
+
+        void release(int code) {
+            if (code == NONE || --refs[code] > 0) {
+                return;
+            }
+            codes.remove(values.get(code));
+            values.set(code, null);
+            if (freeCount == freeCodes.length) {
+                freeCodes = Arrays.copyOf(freeCodes, freeCount * 2);
+            }
+            freeCodes[freeCount++] = code;
+        }
+
+        // Code of 'value', or null if no task has it
+        Integer lookup(String value) {
+            return codes.get(value);
+        }
+
+        String value(int code) {
+            return code == NONE ? "" : values.get(code);
+        }
+
+        void clear() {
+            codes.clear();
+            values.clear();
+            refs = new int[16];
+            freeCount = 0;
+        }
+    }
+
+    @Override
+    public void put(Task task) {
+        add(task.getId(), task.getStatus(), task.getAssignee(), task.getPriority(), task.getDeadline(),
+                task.getCreatedAt(), task.getUpdatedAt());
+    }
+
+    /**
+     * Index (or re-index) one task from its fields alone, as read by a fields-only record
+     * scan (see MappedTaskStore.scanIndexedFields).
+     */
+    public void add(String id, Task.Status taskStatus, String taskAssignee, Task.Priority taskPriority,
+                    String taskDeadline, long taskCreatedAt, long taskUpdatedAt) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = slots.get(id);
+            int slot;
+            if (existing != null) {
+                slot = existing;
+                // Out of the sort orders while the slot still holds the old values
+                for (SortedSlots order : sorted.values()) {
+                    order.remove(slot);
+                }
+                assignees.release(assignee[slot]);
+                deadlines.release(deadline[slot]);
+            } else {
+                slot = allocateSlot();
+                slots.put(id, slot);
+                ids[slot] = id;
+            }
+            status[slot] = (byte) (taskStatus == null ? 0 : taskStatus.ordinal() + 1);
+            priority[slot] = (byte) (taskPriority == null ? 0 : taskPriority.ordinal() + 1);
+            assignee[slot] = assignees.acquire(taskAssignee);
+            deadline[slot] = deadlines.acquire(taskDeadline);
+            createdAt[slot] = taskCreatedAt;
+            updatedAt[slot] = taskUpdatedAt;
+            for (SortedSlots order : sorted.values()) {
+                order.insert(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == ids.length) {
+            int capacity = slotCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            status = Arrays.copyOf(status, capacity);
+            priority = Arrays.copyOf(priority, capacity);
+            assignee = Arrays.copyOf(assignee, capacity);
+            deadline = Arrays.copyOf(deadline, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            updatedAt = Arrays.copyOf(updatedAt, capacity);
+        }
+        return slotCount++;
+    }
+
+    @Override
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(id);
+            if (slot == null) {
+                return;
+            }
+            for (SortedSlots order : sorted.values()) {
+                order.remove(slot);
+            }
+            assignees.release(assignee[slot]);
+            deadlines.release(deadline[slot]);
+            ids[slot] = null;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebuild(Collection<Task> tasks) {
+        clear();
+        for (Task task : tasks) {
+            put(task);
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            slots.clear();
+            Arrays.fill(ids, 0, slotCount, null);
+            slotCount = 0;
+            freeCount = 0;
+            assignees.clear();
+            deadlines.clear();
+            for (SortedSlots order : sorted.values()) {
+                order.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * One pass over the arrays. Tasks without a deadline never match a deadline range,
+     * as in SkipListTaskIndex.
+     */
+    @Override
+    public Collection<String> candidates(TaskQuery query) {
+        if (query.getStatus() == null && query.getAssignee() == null && query.getPriority() == null
+                && !query.hasDeadlineRange()) {
+            return null;
+        }
+        String from = query.getDeadlineFrom();
+        String to = query.getDeadlineTo();
+        if (from != null && to != null && from.compareTo(to) > 0) {
+            return Collections.emptyList();
+        }
+        int wantStatus = query.getStatus() == null ? -1 : query.getStatus().ordinal() + 1;
+        int wantPriority = query.getPriority() == null ? -1 : query.getPriority().ordinal() + 1;
+
+        lock.readLock().lock();
+        try {
+            int wantAssignee = -1;
+            if (query.getAssignee() != null) {
+                Integer code = assignees.lookup(query.getAssignee());
+                if (code == null) {
+                    return Collections.emptyList();
+                }
+                wantAssignee = code;
+            }
+            List<String> result = new ArrayList<>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (ids[slot] == null
+                        || (wantStatus >= 0 && status[slot] != wantStatus)
+                        || (wantPriority >= 0 && priority[slot] != wantPriority)
+                        || (wantAssignee >= 0 && assignee[slot] != wantAssignee)) {
+                    continue;
+                }
+                if (query.hasDeadlineRange()) {
+                    if (deadline[slot] == NONE) {
+                        continue;
+                    }
+                    String value = deadlines.value(deadline[slot]);
+                    if ((from != null && value.compareTo(from) < 0) || (to != null && value.compareTo(to) > 0)) {
+                        continue;
+                    }
+                }
+                result.add(ids[slot]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Keys are copied out in batches of PAGE_BATCH under the read lock; each batch resumes
+     * after the last key of the one before, like a walk of a live skip list.
+     */
+    @Override
+    public Iterator<SortKey> iterate(SortField field, boolean descending, SortKey after) {
+        return new Iterator<SortKey>() {
+            private final int sign = descending ? -1 : 1;
+            private Position last = after != null ? position(field, after) : null;
+            private final List<SortKey> batch = new ArrayList<>(PAGE_BATCH);
+            private int next;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (next == batch.size() && !exhausted) {
+                    batch.clear();
+                    next = 0;
+                    last = selectAfter(field, sign, last, batch);
+                    exhausted = batch.size() < PAGE_BATCH;
+                }
+                return next < batch.size();
+            }
+
+            @Override
+            public SortKey next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(next++);
+            }
+        };
+    }
+
+    /**
+     * A point in one sort order: the field's value (numeric, or text for deadlines) and the id.
+     */
+    private static final class Position {
+        final long number;
+        final String text;
+        final String id;
+
+        Position(long number, String text, String id) {
+            this.number = number;
+            this.text = text;
+            this.id = id;
+        }
+    }
+
+    private static Position position(SortField field, SortKey key) {
+        if (field == SortField.DEADLINE) {
+            return new Position(0, key.getValue(), key.getId());
+        }
+        try {
+            return new Position(Long.parseLong(key.getValue()), null, key.getId());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    // Adds the next PAGE_BATCH keys after 'after' to 'out', in order; returns the last one added
+    private Position selectAfter(SortField field, int sign, Position after, List<SortKey> out) {
+        lock.readLock().lock();
+        try {
+            Position last = after;
+            int[] slotsAfter = sorted.get(field).after(after, sign < 0, PAGE_BATCH);
+            for (int slot : slotsAfter) {
+                out.add(new SortKey(sortValue(field, slot), ids[slot]));
+                last = new Position(number(field, slot), deadlines.value(deadline[slot]), ids[slot]);
+            }
+            return last;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The slots of one sort order, ordered by (value, id), in chunks of at most CHUNK_SIZE so
+     * an insert or removal moves at most a chunk's worth of ints. Chunks are found by binary
+     * search on their first slot. A slot must be removed before its fields change.
+     */
+    private final class SortedSlots {
+        private final SortField field;
+        private final List<int[]> chunks = new ArrayList<>();
+        private final List<Integer> sizes = new ArrayList<>();
+
+        SortedSlots(SortField field) {
+            this.field = field;
+        }
+
+        void insert(int slot) {
+            if (chunks.isEmpty()) {
+                chunks.add(new int[CHUNK_SIZE]);
+                sizes.add(0);
+            }
+            int c = chunkFor(slot);
+            int[] chunk = chunks.get(c);
+            int size = sizes.get(c);
+            if (size == CHUNK_SIZE) {
+                // Split: the upper half moves to a new chunk after this one
+                int[] upper = new int[CHUNK_SIZE];
+                int half = CHUNK_SIZE / 2;
+                System.arraycopy(chunk, half, upper, 0, CHUNK_SIZE - half);
+                chunks.add(c + 1, upper);
+                sizes.add(c + 1, CHUNK_SIZE - half);
+                sizes.set(c, half);
+                if (compare(field, slot, upper[0]) > 0) {
+                    c++;
+                }
+                chunk = chunks.get(c);
+                size = sizes.get(c);
+            }
+            int at = upperBound(chunk, size, slot);
+            System.arraycopy(chunk, at, chunk, at + 1, size - at);
+            chunk[at] = slot;
+            sizes.set(c, size + 1);
+        }
+
+        void remove(int slot) {
+            if (chunks.isEmpty()) {
+                return;
+            }
+            int c = chunkFor(slot);
+            int[] chunk = chunks.get(c);
+            int size = sizes.get(c);
+            int at = upperBound(chunk, size, slot) - 1;
+            if (at < 0 || chunk[at] != slot) {
+                return;
+            }
+            System.arraycopy(chunk, at + 1, chunk, at, size - at - 1);
+            if (size == 1 && chunks.size() > 1) {
+                chunks.remove(c);
+                sizes.remove(c);
+            } else {
+                sizes.set(c, size - 1);
+            }
+        }
+
+        void clear() {
+            chunks.clear();
+            sizes.clear();
+        }
+
+        /**
+         * Up to 'max' slots strictly after 'position' (from the start when null), walking
+         * backwards from the end when 'descending'.
+         */
+        int[] after(Position position, boolean descending, int max) {
+            if (chunks.isEmpty()) {
+                return new int[0];
+            }
+            int[] out = new int[max];
+            int n = 0;
+            int c;
+            int i;
+            if (position == null) {
+                c = descending ? chunks.size() - 1 : 0;
+                i = descending ? sizes.get(c) - 1 : 0;
+            } else {
+                // Last chunk whose first slot is <= position (or the first chunk)
+                int lo = 0;
+                int hi = chunks.size() - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (compare(field, chunks.get(mid)[0], position) <= 0) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                c = lo;
+                int[] chunk = chunks.get(c);
+                int size = sizes.get(c);
+                // First index in the chunk with a slot > position
+                int a = 0;
+                int b = size;
+                while (a < b) {
+                    int mid = (a + b) >>> 1;
+                    if (compare(field, chunk[mid], position) <= 0) {
+                        a = mid + 1;
+                    } else {
+                        b = mid;
+                    }
+                }
+                if (descending) {
+                    // Last index with a slot < position
+                    i = (a > 0 && compare(field, chunk[a - 1], position) == 0) ? a - 2 : a - 1;
+                } else {
+                    i = a;
+                }
+            }
+            while (n < max && c >= 0 && c < chunks.size()) {
+                int[] chunk = chunks.get(c);
+                int size = sizes.get(c);
+                if (descending) {
+                    for (; i >= 0 && n < max; i--) {
+                        out[n++] = chunk[i];
+                    }
+                    if (--c >= 0) {
+                        i = sizes.get(c) - 1;
+                    }
+                } else {
+                    for (; i < size && n < max; i++) {
+                        out[n++] = chunk[i];
+                    }
+                    c++;
+                    i = 0;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        // Index of the chunk 'slot' belongs in: the last whose first slot is <= it, or 0
+        private int chunkFor(int slot) {
+            int lo = 0;
+            int hi = chunks.size() - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (sizes.get(mid) > 0 && compare(field, chunks.get(mid)[0], slot) <= 0) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return lo;
+        }
+
+        // First index in chunk[0, size) whose slot sorts after 'slot'
+        private int upperBound(int[] chunk, int size, int slot) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(field, chunk[mid], slot) <= 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private int compare(SortField field, int a, int b) {
+        int c = field == SortField.DEADLINE
+                ? deadlines.value(deadline[a]).compareTo(deadlines.value(deadline[b]))
+                : Long.compare(number(field, a), number(field, b));
+        return c != 0 ? c : ids[a].compareTo(ids[b]);
+    }
+
+    private int compare(SortField field, int slot, Position position) {
+        int c = field == SortField.DEADLINE
+                ? deadlines.value(deadline[slot]).compareTo(position.text)
+                : Long.compare(number(field, slot), position.number);
+        return c != 0 ? c : ids[slot].compareTo(position.id);
+    }
+
+    private long number(SortField field, int slot) {
+        switch (field) {
+            case CREATED_AT: return createdAt[slot];
+            case UPDATED_AT: return updatedAt[slot];
+            case PRIORITY: return priority[slot];
+            default: return 0;
+        }
+    }
+
+    // The same key values SkipListTaskIndex uses, so cursors carry over
+    private String sortValue(SortField field, int slot) {
+        switch (field) {
+            case CREATED_AT: return SortKey.sortableMillis(createdAt[slot]);
+            case UPDATED_AT: return SortKey.sortableMillis(updatedAt[slot]);
+            case PRIORITY: return String.valueOf(priority[slot]);
+            default: return deadlines.value(deadline[slot]);
+        }
+    }
+}
@@ -9,64 +9,204 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
 
 public class DataStore {
-    // Thread-safe storage for tasks
-    private static final ConcurrentHashMap<String, Task> tasks = new ConcurrentHashMap<>();
+    // Storage engine, -Dnetstream.store.engine=wal|memory|mmap (see TaskRepository)
+    private static final String ENGINE = System.getProperty("netstream.store.engine", "wal");
+    private static final Path DATA_DIR = Paths.get("data");
+    private static final Path STORE_DIR = DATA_DIR.resolve("store");
+
+    // Changes kept for GET_CHANGES before clients fall back to a full snapshot
+    private static final int CHANGE_LOG_CAPACITY = Integer.getInteger("netstream.store.changeLogSize", 10000);
+
+    // Task storage
+    private static final TaskRepository repository = createRepository();
+
+    // expectedVersion for updates that should apply whatever the current version is
+    public static final long ANY_VERSION = -1;
     
     // Thread-safe storage for notifications (for UDP server later)
     private static final List<String> notifications = Collections.synchronizedList(new ArrayList<>());
 
     // Persistence file path
-    private static final Path TASKS_FILE = Paths.get("data", "tasks.json");
-    private static final Path NOTIFICATIONS_FILE = Paths.get("data", "notifications.json");
+    private static final Path NOTIFICATIONS_FILE = DATA_DIR.resolve("notifications.json");
     private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
 
-    // Static initializer to load tasks on startup
+    // Notifications are a small ring buffer; they are written at most once per flush interval
+    private static final long NOTIFICATION_FLUSH_MS = 500;
+    private static final AtomicBoolean notificationsDirty = new AtomicBoolean(false);
+    private static final ScheduledExecutorService persistenceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "DataStore-Persistence");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Static initializer to load notifications on startup
     static {
-        loadTasks();
         loadNotifications();
+        persistenceExecutor.scheduleWithFixedDelay(DataStore::flushNotifications,
+                NOTIFICATION_FLUSH_MS, NOTIFICATION_FLUSH_MS, TimeUnit.MILLISECONDS);
+        System.out.println("[DataStore] Storage engine: " + repository.getClass().getSimpleName());
+    }
+
+    private static TaskRepository createRepository() {
+        switch (ENGINE) {
+            case "memory":
+                return new InMemoryTaskRepository(CHANGE_LOG_CAPACITY);
+            case "mmap":
+                try {
+                    int segmentSize = Integer.getInteger("netstream.store.segmentSizeMb", 64) * 1024 * 1024;
+                    int cacheSize = Integer.getInteger("netstream.store.cacheSize", 10000);
+                    return new MappedTaskRepository(STORE_DIR, segmentSize, cacheSize, CHANGE_LOG_CAPACITY);
+                } catch (IOException e) {
+                    System.err.println("[ERROR] Failed to open mmap store, falling back to wal: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                break;
+            case "wal":
+                break;
+            default:
+                System.err.println("[ERROR] Unknown storage engine '" + ENGINE + "', using wal");
+        }
+        // Persistence policy, set with -Dnetstream.persistence.mode=every-write|group-commit|async
+        TaskLog.SyncMode syncMode =
+                TaskLog.SyncMode.fromString(System.getProperty("netstream.persistence.mode", "group-commit"));
+        System.out.println("[DataStore] Persistence mode: " + syncMode);
+        return new WalTaskRepository(DATA_DIR, syncMode,
+                Long.getLong("netstream.persistence.commitWindowMs", 2),
+                Integer.getInteger("netstream.persistence.maxBatch", 256),
+                // Snapshot format written by compaction, -Dnetstream.store.snapshotFormat=json|binary
+                TaskSnapshotCodec.Format.fromString(System.getProperty("netstream.store.snapshotFormat", "json")),
+                CHANGE_LOG_CAPACITY);
     }
 
     // Task operations
-    public static void addTask(Task task) {
-        tasks.put(task.getId(), task);
+    public static Task addTask(Task task) {
+        task = repository.put(task);
         addNotification("TASK_CREATED|" + task.getId() + "|Task created: " + task.getTitle() + "|" + System.currentTimeMillis());
         System.out.println("[DataStore] Task added: " + task.getId());
-        saveTasks();
+        return task;
     }
 
     public static Task getTask(String id) {
-        return tasks.get(id);
+        return repository.get(id);
     }
 
     public static List<Task> getAllTasks() {
-        return new ArrayList<>(tasks.values());
+        return repository.scan();
+    }
+
+    /**
+     * One page of tasks ordered by 'sortBy' (createdAt, updatedAt, deadline or priority).
+     * The cursor comes from the previous page's nextCursor; an invalid one throws IllegalArgumentException.
+     */
+    public static TaskPage getTasksPage(String sortBy, boolean descending, String cursor, int limit) {
+        return repository.scan(sortBy, descending, cursor, limit);
+    }
+
+    /**
+     * Tasks matching every filter in the query, looked up through the secondary indexes.
+     */
+    public static List<Task> queryTasks(TaskQuery query) {
+        return repository.query(query);
     }
 
+    /**
+     * Unconditional replace (last writer wins). Prefer the optimistic overload below.
+     */
     public static void updateTask(String id, Task updatedTask) {
-        if (tasks.containsKey(id)) {
-            tasks.put(id, updatedTask);
-            addNotification("TASK_UPDATED|" + id + "|Task updated: " + updatedTask.getTitle() + "|" + System.currentTimeMillis());
-            System.out.println("[DataStore] Task updated: " + id);
-            saveTasks();
+        if (!id.equals(updatedTask.getId()) || repository.update(updatedTask) == null) {
+            return;
+        }
+        addNotification("TASK_UPDATED|" + id + "|Task updated: " + updatedTask.getTitle() + "|" + System.currentTimeMillis());
+        System.out.println("[DataStore] Task updated: " + id);
+    }
+
+    /**
+     * Optimistic update: 'change' builds the new task from the current one, which it replaces
+     * only if nobody changed it in the meantime. With ANY_VERSION a lost race simply
+     * re-applies the change on the newer task; with a specific expectedVersion it throws
+     * VersionConflictException instead. Returns the stored task, or null if there is none.
+     */
+    public static Task updateTask(String id, long expectedVersion, UnaryOperator<Task> change) {
+        while (true) {
+            Task current = repository.get(id);
+            if (current == null) {
+                return null;
+            }
+            if (expectedVersion != ANY_VERSION && current.getVersion() != expectedVersion) {
+                throw new VersionConflictException(id, expectedVersion, current.getVersion());
+            }
+            Task updated;
+            try {
+                updated = repository.replace(change.apply(current), current.getVersion());
+                if (updated == null) {
+                    return null;
+                }
+            } catch (VersionConflictException e) {
+                if (expectedVersion != ANY_VERSION) {
+                    throw e;
+                }
+                continue;
+            }
+            addNotification("TASK_UPDATED|" + id + "|Task updated: " + updated.getTitle() + "|" + System.currentTimeMillis());
+            System.out.println("[DataStore] Task updated: " + id + " (version " + updated.getVersion() + ")");
+            return updated;
         }
     }
 
     public static boolean deleteTask(String id) {
-        Task removed = tasks.remove(id);
-        if (removed != null) {
-            addNotification("TASK_DELETED|" + id + "|Task deleted|" + System.currentTimeMillis());
-            System.out.println("[DataStore] Task deleted: " + id);
-            saveTasks();
-            return true;
+        if (repository.delete(id) == null) {
+            return false;
         }
-        return false;
+        addNotification("TASK_DELETED|" + id + "|Task deleted|" + System.currentTimeMillis());
+        System.out.println("[DataStore] Task deleted: " + id);
+        return true;
+    }
+
+    /**
+     * Apply a batch of creates, updates and deletes with one persisted write. Adds a single
+     * notification for the whole batch instead of one per task.
+     */
+    public static List<TaskBatch.Result> applyBatch(TaskBatch batch) {
+        List<TaskBatch.Result> results = repository.apply(batch);
+        int created = 0, updated = 0, deleted = 0;
+        for (TaskBatch.Result result : results) {
+            switch (result.getOutcome()) {
+                case CREATED: created++; break;
+                case UPDATED: updated++; break;
+                case DELETED: deleted++; break;
+                default: break;
+            }
+        }
+        if (created + updated + deleted > 0) {
+            String summary = created + " created, " + updated + " updated, " + deleted + " deleted";
+            addNotification("TASK_BATCH|batch_" + repository.version() + "|Batch: " + summary + "|" + System.currentTimeMillis());
+            System.out.println("[DataStore] Batch applied: " + summary + ", "
+                    + (results.size() - created - updated - deleted) + " failed");
+        }
+        return results;
+    }
+
+    public static long getVersion() {
+        return repository.version();
+    }
+
+    /**
+     * Tasks created, updated or deleted after 'sinceVersion', one entry per task carrying
+     * its current state, or a full snapshot when the change log no longer reaches back that far.
+     */
+    public static TaskChangeSet getChangesSince(long sinceVersion) {
+        return repository.changesSince(sinceVersion);
     }
 
     public static int getTaskCount() {
-        return tasks.size();
+        return repository.size();
     }
 
     // Notification operations (for UDP server)
@@ -76,8 +216,8 @@ public class DataStore {
         if (notifications.size() > 100) {
             notifications.remove(0);
         }
-        // Persist notifications to disk
-        saveNotifications();
+        // Persisted by the next background flush
+        notificationsDirty.set(true);
         // Note: Broadcasting is handled by UDPNotificationServer.broadcast()
         // which forwards to both UDP clients AND HTTP clients via NotificationBroadcaster
     }
@@ -88,34 +228,35 @@ public class DataStore {
 
     public static void clearNotifications() {
         notifications.clear();
-        saveNotifications();
+        notificationsDirty.set(true);
     }
 
     // Utility methods
     public static void clear() {
-        tasks.clear();
+        repository.clear();
         notifications.clear();
         System.out.println("[DataStore] All data cleared");
     }
 
     public static boolean taskExists(String id) {
-        return tasks.containsKey(id);
+        return repository.get(id) != null;
+    }
+
+    /**
+     * Flush pending task writes and notifications. Called on shutdown so async-mode writes are not lost.
+     */
+    public static void shutdown() {
+        repository.close();
+        persistenceExecutor.shutdown();
+        flushNotifications();
+        System.out.println("[DataStore] Persistence flushed");
     }
 
     // Persistence methods
-    private static void saveTasks() {
-        try {
-            // Create data directory if it doesn't exist
-            Files.createDirectories(TASKS_FILE.getParent());
-            
-            // Save tasks to JSON file
-            List<Task> taskList = new ArrayList<>(tasks.values());
-            String json = gson.toJson(taskList);
-            Files.writeString(TASKS_FILE, json);
-            System.out.println("[DataStore] Tasks persisted to " + TASKS_FILE.toAbsolutePath());
-        } catch (IOException e) {
-            System.err.println("[ERROR] Failed to save tasks: " + e.getMessage());
-            e.printStackTrace();
+
+    private static void flushNotifications() {
+        if (notificationsDirty.getAndSet(false)) {
+            saveNotifications();
         }
     }
 
@@ -158,25 +299,4 @@ public class DataStore {
             e.printStackTrace();
         }
     }
-
-    private static void loadTasks() {
-        try {
-            if (Files.exists(TASKS_FILE)) {
-                String json = Files.readString(TASKS_FILE);
-                List<Task> taskList = gson.fromJson(json, new TypeToken<List<Task>>(){}.getType());
-                
-                if (taskList != null) {
-                    for (Task task : taskList) {
-                        tasks.put(task.getId(), task);
-                    }
-                    System.out.println("[DataStore] Loaded " + taskList.size() + " tasks from " + TASKS_FILE.toAbsolutePath());
-                }
-            } else {
-                System.out.println("[DataStore] No existing tasks file found, starting fresh");
-            }
-        } catch (IOException e) {
-            System.err.println("[ERROR] Failed to load tasks: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+package shared;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered 64-bit ids, Snowflake layout:
+ *
+ *   41 bits  milliseconds since EPOCH (good until 2093)
+ *   10 bits  node id, -Dnetstream.nodeId (0-1023, default 0)
+ *   12 bits  sequence within the millisecond
+ *
+ * Lock-free: the last (millis, sequence) pair lives in one AtomicLong and next() advances
+ * it with a CAS to max(last + 1, now). When 4096 ids are taken within one millisecond the
+ * sequence carries into the next millisecond instead of waiting for the clock, so ids run
+ * slightly ahead of the clock under sustained load and never repeat or go backwards, even
+ * if the system clock does. (Only a restart while still ahead, i.e. right after more than
+ * 4 million ids per second, could reissue an id.) Ids from different nodes differ in the
+ * node bits.
+ *
+ * Ids of one node sort in creation order; task and file ids are a prefix plus the decimal id.
+ */
+public final class IdGenerator {
+    // 2024-01-01T00:00:00Z
+    private static final long EPOCH = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+
+    private static final long NODE_ID = nodeId();
+
+    // (millis since EPOCH) << SEQUENCE_BITS | sequence, of the last id handed out
+    private static final AtomicLong last = new AtomicLong();
+
+    private IdGenerator() {}
+
+    public static long next() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long prev, stamp;
+        do {
+            prev = last.get();
+            stamp = Math.max(prev + 1, now);
+        } while (!last.compareAndSet(prev, stamp));
+        long millis = stamp >>> SEQUENCE_BITS;
+        long sequence = stamp & ((1L << SEQUENCE_BITS) - 1);
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | (NODE_ID << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * prefix + next id, e.g. "task_369583432084226048".
+     */
+    public static String next(String prefix) {
+        return prefix + next();
+    }
+
+    /**
+     * Creation time encoded in an id, epoch millis.
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    private static long nodeId() {
+        long node = Long.getLong("netstream.nodeId", 0);
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("netstream.nodeId must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        return node;
+    }
+
+    /**
+     * Uniqueness check and throughput: IdGenerator [threads] [idsPerThread]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        long[][] ids = new long[threads][perThread];
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long[] out = ids[t];
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = next();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long total = (long) threads * perThread;
+        long outOfOrder = 0;
+        long[] all = new long[(int) total];
+        for (int t = 0; t < threads; t++) {
+            long[] out = ids[t];
+            for (int i = 1; i < out.length; i++) {
+                if (out[i] <= out[i - 1]) {
+                    outOfOrder++;
+                }
+            }
+            System.arraycopy(out, 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        long duplicates = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                duplicates++;
+            }
+        }
+        System.out.printf("[IdGenerator] %,d ids on %d threads in %,d ms (%,.1f M ids/s)  duplicates %,d  non-increasing per thread %,d%n",
+                total, threads, elapsedNanos / 1_000_000, total * 1e3 / elapsedNanos, duplicates, outOfOrder);
+        if (duplicates > 0 || outOfOrder > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package shared;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tasks in a map with secondary indexes, a store version and a bounded change log.
+ * Nothing is persisted; the persistent engines extend this class and write each
+ * mutation out through persistPut()/persistDelete().
+ */
+public class InMemoryTaskRepository implements TaskRepository {
+    private static final CompletableFuture<Void> COMMITTED = CompletableFuture.completedFuture(null);
+
+    protected final Map<String, Task> tasks;
+
+    // Secondary indexes (status, assignee, priority, deadline), maintained under writeLock
+    protected final TaskIndex index;
+
+    // Keeps map updates, index updates and persisted records in the same order
+    protected final Object writeLock = new Object();
+
+    // Store version, bumped on every mutation. Starts from a time-based value so versions
+    // handed out by a previous run fall outside the change log and get a full snapshot.
+    private final long startVersion = System.currentTimeMillis() << 10;
+    private final AtomicLong version = new AtomicLong(startVersion);
+
+    // Bounded change log for GET_CHANGES; 'changeLogFloor' is the newest version no longer covered
+    private final int changeLogCapacity;
+    private final ArrayDeque<TaskChange> changeLog = new ArrayDeque<>();
+    private long changeLogFloor = startVersion;
+
+    public InMemoryTaskRepository(int changeLogCapacity) {
+        this(new ConcurrentHashMap<>(), new SkipListTaskIndex(), changeLogCapacity);
+    }
+
+    protected InMemoryTaskRepository(Map<String, Task> tasks, TaskIndex index, int changeLogCapacity) {
+        this.tasks = tasks;
+        this.index = index;
+        this.changeLogCapacity = changeLogCapacity;
+    }
+
+    // ---- Persistence hooks, called under writeLock ----
+
+    /**
+     * Persist a put; the returned future completes once it is durable.
+     */
+    protected CompletableFuture<Void> persistPut(Task task) {
+        return COMMITTED;
+    }
+
+    protected CompletableFuture<Void> persistDelete(String id) {
+        return COMMITTED;
+    }
+
+    /**
+     * Persist the changes of one batch (the task in each change is the stored one). By
+     * default one record at a time; the future is the last one's, which completes last.
+     */
+    protected CompletableFuture<Void> persistBatch(List<TaskChange> changes) {
+        CompletableFuture<Void> last = COMMITTED;
+        for (TaskChange change : changes) {
+            last = change.getOp() == TaskChange.Op.DELETED
+                    ? persistDelete(change.getTaskId()) : persistPut(change.getTask());
+        }
+        return last;
+    }
+
+    /**
+     * Called outside writeLock with the future from persistPut()/persistDelete().
+     */
+    protected void awaitDurable(CompletableFuture<Void> committed, String id) {
+    }
+
+    // ---- TaskRepository ----
+
+    @Override
+    public Task get(String id) {
+        return tasks.get(id);
+    }
+
+    @Override
+    public Task put(Task task) {
+        Task stored;
+        CompletableFuture<Void> committed;
+        synchronized (writeLock) {
+            Task current = tasks.get(task.getId());
+            stored = stamp(task, current);
+            committed = store(stored, current != null ? TaskChange.Op.UPDATED : TaskChange.Op.CREATED);
+        }
+        awaitDurable(committed, task.getId());
+        return stored;
+    }
+
+    @Override
+    public Task update(Task task) {
+        Task stored;
+        CompletableFuture<Void> committed;
+        synchronized (writeLock) {
+            Task current = tasks.get(task.getId());
+            if (current == null) {
+                return null;
+            }
+            stored = stamp(task, current);
+            committed = store(stored, TaskChange.Op.UPDATED);
+        }
+        awaitDurable(committed, task.getId());
+        return stored;
+    }
+
+    /**
+     * The version check and the swap happen under writeLock together with the index update
+     * and the log append, which must stay in map order anyway; building the new task (the
+     * costly part) is left to the caller, outside the lock.
+     */
+    @Override
+    public Task replace(Task task, long expectedVersion) {
+        Task stored;
+        CompletableFuture<Void> committed;
+        synchronized (writeLock) {
+            Task current = tasks.get(task.getId());
+            if (current == null) {
+                return null;
+            }
+            if (current.getVersion() != expectedVersion) {
+                throw new VersionConflictException(task.getId(), expectedVersion, current.getVersion());
+            }
+            stored = stamp(task, current);
+            committed = store(stored, TaskChange.Op.UPDATED);
+        }
+        awaitDurable(committed, task.getId());
+        return stored;
+    }
+
+    // The stored copy carries the next version
+    private static Task stamp(Task task, Task current) {
+        return task.withVersion(current != null ? current.getVersion() + 1 : Math.max(task.getVersion(), 1));
+    }
+
+    // Called under writeLock
+    private CompletableFuture<Void> store(Task task, TaskChange.Op op) {
+        storeInMemory(task, op);
+        return persistPut(task);
+    }
+
+    private long storeInMemory(Task task, TaskChange.Op op) {
+        tasks.put(task.getId(), task);
+        index.put(task);
+        return recordChange(op, task.getId());
+    }
+
+    @Override
+    public Task delete(String id) {
+        Task removed;
+        CompletableFuture<Void> committed;
+        synchronized (writeLock) {
+            removed = tasks.remove(id);
+            if (removed == null) {
+                return null;
+            }
+            index.remove(id);
+            recordChange(TaskChange.Op.DELETED, id);
+            committed = persistDelete(id);
+        }
+        awaitDurable(committed, id);
+        return removed;
+    }
+
+    /**
+     * The whole batch is applied under writeLock and handed to persistBatch() at once,
+     * so a WAL writes it with one fsync instead of one per task. UPDATE changes run
+     * under the lock too; they are expected to be cheap field copies.
+     */
+    @Override
+    public List<TaskBatch.Result> apply(TaskBatch batch) {
+        List<TaskBatch.Result> results = new ArrayList<>(batch.size());
+        List<TaskChange> changes = new ArrayList<>(batch.size());
+        CompletableFuture<Void> committed;
+        synchronized (writeLock) {
+            for (TaskBatch.Op op : batch.getOps()) {
+                results.add(applyOne(op, changes));
+            }
+            committed = changes.isEmpty() ? COMMITTED : persistBatch(changes);
+        }
+        awaitDurable(committed, "batch of " + changes.size());
+        return results;
+    }
+
+    // Called under writeLock; appends what it stored to 'changes'
+    private TaskBatch.Result applyOne(TaskBatch.Op op, List<TaskChange> changes) {
+        String id = op.getTaskId();
+        Task current = tasks.get(id);
+        switch (op.getType()) {
+            case PUT: {
+                TaskChange.Op kind = current != null ? TaskChange.Op.UPDATED : TaskChange.Op.CREATED;
+                Task stored = stamp(op.getTask(), current);
+                changes.add(new TaskChange(storeInMemory(stored, kind), kind, id, stored));
+                return result(kind == TaskChange.Op.CREATED ? TaskBatch.Result.Outcome.CREATED
+                        : TaskBatch.Result.Outcome.UPDATED, id, stored);
+            }
+            case UPDATE: {
+                if (current == null) {
+                    return result(TaskBatch.Result.Outcome.NOT_FOUND, id, null);
+                }
+                if (op.getExpectedVersion() != DataStore.ANY_VERSION && op.getExpectedVersion() != current.getVersion()) {
+                    return new TaskBatch.Result(TaskBatch.Result.Outcome.CONFLICT, id, null, current.getVersion(), null);
+                }
+                Task changed;
+                try {
+                    changed = op.getChange().apply(current);
+                } catch (RuntimeException e) {
+                    return new TaskBatch.Result(TaskBatch.Result.Outcome.FAILED, id, null, 0, e.getMessage());
+                }
+                if (!id.equals(changed.getId())) {
+                    return new TaskBatch.Result(TaskBatch.Result.Outcome.FAILED, id, null, 0, "Task id cannot change");
+                }
+                Task stored = stamp(changed, current);
+                changes.add(new TaskChange(storeInMemory(stored, TaskChange.Op.UPDATED), TaskChange.Op.UPDATED, id, stored));
+                return result(TaskBatch.Result.Outcome.UPDATED, id, stored);
+            }
+            case DELETE: {
+                if (current == null) {
+                    return result(TaskBatch.Result.Outcome.NOT_FOUND, id, null);
+                }
+                tasks.remove(id);
+                index.remove(id);
+                changes.add(new TaskChange(recordChange(TaskChange.Op.DELETED, id), TaskChange.Op.DELETED, id, null));
+                return result(TaskBatch.Result.Outcome.DELETED, id, current);
+            }
+            default:
+                throw new IllegalStateException("Unknown batch op: " + op.getType());
+        }
+    }
+
+    private static TaskBatch.Result result(TaskBatch.Result.Outcome outcome, String id, Task task) {
+        return new TaskBatch.Result(outcome, id, task, task != null ? task.getVersion() : 0, null);
+    }
+
+    @Override
+    public List<Task> scan() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    /**
+     * The cursor is opaque to clients: it encodes the sort field, direction and the last
+     * (value, id) returned, so the next page resumes right after it even if tasks were
+     * added or removed in between.
+     */
+    @Override
+    public TaskPage scan(String sortBy, boolean descending, String cursor, int limit) {
+        TaskIndex.SortField field = TaskIndex.SortField.fromString(sortBy);
+        TaskIndex.SortKey after = cursor != null ? decodeCursor(cursor, field, descending) : null;
+
+        List<Task> page = new ArrayList<>(limit);
+        Iterator<TaskIndex.SortKey> keys = index.iterate(field, descending, after);
+        TaskIndex.SortKey last = null;
+        while (page.size() < limit && keys.hasNext()) {
+            last = keys.next();
+            Task task = tasks.get(last.getId());
+            if (task != null) {
+                page.add(task);
+            }
+        }
+
+        String nextCursor = keys.hasNext() && last != null ? encodeCursor(field, descending, last) : null;
+        return new TaskPage(page, nextCursor, tasks.size());
+    }
+
+    private static String encodeCursor(TaskIndex.SortField field, boolean descending, TaskIndex.SortKey key) {
+        String raw = field.getWireName() + "\n" + (descending ? "desc" : "asc") + "\n" + key.getValue() + "\n" + key.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static TaskIndex.SortKey decodeCursor(String cursor, TaskIndex.SortField field, boolean descending) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (parts.length != 4
+                || !parts[0].equals(field.getWireName())
+                || !parts[1].equals(descending ? "desc" : "asc")) {
+            throw new IllegalArgumentException("Invalid cursor for sortBy=" + field.getWireName());
+        }
+        return new TaskIndex.SortKey(parts[2], parts[3]);
+    }
+
+    /**
+     * Looked up through the secondary indexes, so the cost is proportional to the
+     * smallest matching index bucket.
+     */
+    @Override
+    public List<Task> query(TaskQuery query) {
+        Collection<String> candidates = index.candidates(query);
+        if (candidates == null) {
+            return scan();
+        }
+        List<Task> result = new ArrayList<>();
+        for (String id : candidates) {
+            Task task = tasks.get(id);
+            if (task != null && query.matches(task)) {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * One entry per changed task carrying its current state. Falls back to a full snapshot
+     * when the change log no longer reaches back that far (or the version is from another run).
+     */
+    @Override
+    public TaskChangeSet changesSince(long sinceVersion) {
+        List<TaskChange> entries = null;
+        long current;
+        synchronized (changeLog) {
+            current = version.get();
+            if (sinceVersion >= changeLogFloor && sinceVersion <= current) {
+                entries = new ArrayList<>();
+                Iterator<TaskChange> it = changeLog.descendingIterator();
+                while (it.hasNext()) {
+                    TaskChange change = it.next();
+                    if (change.getVersion() <= sinceVersion) {
+                        break;
+                    }
+                    entries.add(change);
+                }
+            }
+        }
+
+        if (entries == null) {
+            // Read the version before copying: the copy may include later changes, which a
+            // client simply receives again on its next delta call.
+            return TaskChangeSet.snapshot(current, scan());
+        }
+
+        // Newest first, so the first entry seen for a task is its latest change
+        Map<String, TaskChange> latest = new LinkedHashMap<>();
+        for (TaskChange change : entries) {
+            latest.putIfAbsent(change.getTaskId(), change);
+        }
+        List<TaskChange> changes = new ArrayList<>(latest.size());
+        for (TaskChange change : latest.values()) {
+            Task task = change.getOp() == TaskChange.Op.DELETED ? null : tasks.get(change.getTaskId());
+            changes.add(new TaskChange(change.getVersion(), change.getOp(), change.getTaskId(), task));
+        }
+        Collections.reverse(changes);
+        return TaskChangeSet.delta(current, changes);
+    }
+
+    // Called under writeLock; returns the new store version
+    private long recordChange(TaskChange.Op op, String id) {
+        synchronized (changeLog) {
+            long v = version.incrementAndGet();
+            changeLog.addLast(new TaskChange(v, op, id, null));
+            while (changeLog.size() > changeLogCapacity) {
+                changeLogFloor = changeLog.removeFirst().getVersion();
+            }
+            return v;
+        }
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    @Override
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Deletes every task the way delete() does, so GET_CHANGES clients see the removals and
+     * a persistent engine logs them (as one batch).
+     */
+    @Override
+    public void clear() {
+        List<TaskChange> changes;
+        CompletableFuture<Void> committed;
+        synchronized (writeLock) {
+            changes = new ArrayList<>(tasks.size());
+            for (String id : new ArrayList<>(tasks.keySet())) {
+                tasks.remove(id);
+                index.remove(id);
+                changes.add(new TaskChange(recordChange(TaskChange.Op.DELETED, id), TaskChange.Op.DELETED, id, null));
+            }
+            committed = changes.isEmpty() ? COMMITTED : persistBatch(changes);
+        }
+        awaitDurable(committed, "clear of " + changes.size());
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,52 @@
+package shared;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tasks stored in memory-mapped segment files (MappedTaskStore), for data sets larger
+ * than the heap. Writes go straight into the mapping; dirty pages are forced to disk
+ * every FORCE_INTERVAL_MS and on close. Queries and pages use a CompactTaskIndex, which
+ * keeps indexed fields in primitive arrays rather than objects per task.
+ */
+public class MappedTaskRepository extends InMemoryTaskRepository {
+    private static final long FORCE_INTERVAL_MS = 1000;
+
+    private final MappedTaskStore store;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "MappedTaskRepository-Flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MappedTaskRepository(Path dir, int segmentSize, int cacheSize, int changeLogCapacity) throws IOException {
+        this(new MappedTaskStore(dir, segmentSize, cacheSize), changeLogCapacity);
+        System.out.println("[DataStore] Opened mmap store with " + store.size() + " tasks in "
+                + store.getSegmentCount() + " segment(s) at " + dir.toAbsolutePath());
+    }
+
+    private MappedTaskRepository(MappedTaskStore store, int changeLogCapacity) {
+        this(store, new CompactTaskIndex(), changeLogCapacity);
+    }
+
+    private MappedTaskRepository(MappedTaskStore store, CompactTaskIndex compactIndex, int changeLogCapacity) {
+        super(store, compactIndex, changeLogCapacity);
+        this.store = store;
+        // Segments were indexed by id when the store opened; the secondary indexes are built
+        // from the records' indexed fields alone, without decoding tasks
+        long start = System.currentTimeMillis();
+        store.scanIndexedFields(compactIndex);
+        System.out.println("[DataStore] Indexed " + store.size() + " mmap tasks in "
+                + (System.currentTimeMillis() - start) + " ms");
+        flusher.scheduleWithFixedDelay(store::force, FORCE_INTERVAL_MS, FORCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        store.force();
+    }
+}
@@ -0,0 +1,318 @@
+package shared;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Disk-resident task storage for data sets larger than the heap.
+ *
+ * Tasks live in append-only, memory-mapped segment files (data/store/segment-NNNNN.dat).
+ * Each record is: int body length | byte type (PUT or DELETE) | body, where the body is a
+ * TaskSnapshotCodec record for PUT (PUT_LEGACY: format 1 record, read only) and the
+ * UTF-8 id for DELETE. A zero length marks the
+ * end of the written part of a segment.
+ *
+ * The heap only holds an id -> (segment, offset) index and a bounded LRU cache of decoded
+ * tasks. Restart scans the segments reading record ids only; scanIndexedFields() then reads
+ * the indexed fields of each live record for CompactTaskIndex, still without building a Task.
+ * Superseded records are not reclaimed; rewrite the store from a snapshot to shrink it.
+ *
+ * Exposed as a Map so MappedTaskRepository can use it in place of a ConcurrentHashMap. Writes are
+ * serialized internally; reads are lock-free apart from the cache.
+ */
+public class MappedTaskStore extends AbstractMap<String, Task> {
+    private static final byte TYPE_PUT_LEGACY = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final byte TYPE_PUT = 3;
+    private static final int HEADER_SIZE = 5;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Long> locations = new ConcurrentHashMap<>();
+    private final Map<String, Task> cache;
+
+    // Append position, guarded by 'this'
+    private int writeSegment;
+    private int writePos;
+
+    public MappedTaskStore(Path dir, int segmentSize, int cacheSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, Task>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Task> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        open();
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "segment-*.dat")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+
+        if (files.isEmpty()) {
+            addSegment();
+            return;
+        }
+        for (int i = 0; i < files.size(); i++) {
+            segments.add(map(files.get(i)));
+            writePos = scan(i);
+            writeSegment = i;
+        }
+    }
+
+    /**
+     * Rebuild the location index from one segment; returns the end of its written data.
+     */
+    private int scan(int segment) {
+        MappedByteBuffer buffer = segments.get(segment);
+        int pos = 0;
+        while (pos + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + HEADER_SIZE + length > segmentSize) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.get(pos + HEADER_SIZE, body);
+            if (buffer.get(pos + 4) == TYPE_DELETE) {
+                locations.remove(new String(body, StandardCharsets.UTF_8));
+            } else {
+                locations.put(TaskSnapshotCodec.decodeRecordId(body, 0), location(segment, pos));
+            }
+            pos += HEADER_SIZE + length;
+        }
+        return pos;
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private void addSegment() throws IOException {
+        int next = segments.size();
+        segments.add(map(dir.resolve(String.format("segment-%05d.dat", next))));
+        writeSegment = next;
+        writePos = 0;
+        System.out.println("[MappedTaskStore] Opened segment " + next + " in " + dir.toAbsolutePath());
+    }
+
+    private static long location(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private synchronized long append(byte type, byte[] body) {
+        int total = HEADER_SIZE + body.length;
+        if (total > segmentSize) {
+            throw new IllegalArgumentException("Task record too large for segment: " + body.length + " bytes");
+        }
+        try {
+            // Keep room for a zero end marker after the last record
+            if (writePos + total + 4 > segmentSize) {
+                addSegment();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create store segment: " + e.getMessage(), e);
+        }
+
+        MappedByteBuffer buffer = segments.get(writeSegment);
+        // Body first, length last: a record only becomes visible to a restart scan once complete
+        buffer.put(writePos + HEADER_SIZE, body);
+        buffer.put(writePos + 4, type);
+        buffer.putInt(writePos, body.length);
+
+        long location = location(writeSegment, writePos);
+        writePos += total;
+        return location;
+    }
+
+    private Task read(long location) {
+        byte[] body = body(location);
+        return isLegacy(location)
+                ? TaskSnapshotCodec.decodeLegacyRecord(body, 0, body.length)
+                : TaskSnapshotCodec.decodeRecord(body, 0, body.length);
+    }
+
+    private byte[] body(long location) {
+        MappedByteBuffer buffer = segments.get((int) (location >>> 32));
+        int offset = (int) location;
+        byte[] body = new byte[buffer.getInt(offset)];
+        buffer.get(offset + HEADER_SIZE, body);
+        return body;
+    }
+
+    private boolean isLegacy(long location) {
+        return segments.get((int) (location >>> 32)).get((int) location + 4) == TYPE_PUT_LEGACY;
+    }
+
+    /**
+     * Feed the indexed fields of every live task to 'index', read straight from the records
+     * (MappedTaskRepository does this at startup). Only format 1 records, which hold every
+     * field as text, are decoded in full. The index keeps this store's id strings.
+     */
+    public void scanIndexedFields(CompactTaskIndex index) {
+        for (Map.Entry<String, Long> entry : locations.entrySet()) {
+            long location = entry.getValue();
+            byte[] body = body(location);
+            if (isLegacy(location)) {
+                Task task = TaskSnapshotCodec.decodeLegacyRecord(body, 0, body.length);
+                index.add(entry.getKey(), task.getStatus(), task.getAssignee(), task.getPriority(),
+                        task.getDeadline(), task.getCreatedAt(), task.getUpdatedAt());
+            } else {
+                TaskSnapshotCodec.indexRecord(body, 0, entry.getKey(), index);
+            }
+        }
+    }
+
+    @Override
+    public Task get(Object key) {
+        Task task = cache.get(key);
+        if (task != null) {
+            return task;
+        }
+        Long location = locations.get(key);
+        if (location == null) {
+            return null;
+        }
+        task = read(location);
+        synchronized (this) {
+            // Don't cache a record a concurrent put() has already superseded
+            if (location.equals(locations.get(key))) {
+                cache.putIfAbsent(task.getId(), task);
+            }
+        }
+        return task;
+    }
+
+    /**
+     * Always returns null; callers needing the previous value should get() it first.
+     */
+    @Override
+    public synchronized Task put(String id, Task task) {
+        long location = append(TYPE_PUT, TaskSnapshotCodec.encodeRecord(task));
+        locations.put(id, location);
+        cache.put(id, task);
+        return null;
+    }
+
+    @Override
+    public synchronized Task remove(Object key) {
+        Task previous = get(key);
+        if (previous == null) {
+            return null;
+        }
+        String id = (String) key;
+        append(TYPE_DELETE, id.getBytes(StandardCharsets.UTF_8));
+        locations.remove(id);
+        cache.remove(id);
+        return previous;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return locations.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return locations.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (String id : new ArrayList<>(locations.keySet())) {
+            remove(id);
+        }
+    }
+
+    /**
+     * Entries are decoded lazily while iterating (and go through the LRU cache).
+     */
+    @Override
+    public Set<Map.Entry<String, Task>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Task>>() {
+            @Override
+            public Iterator<Map.Entry<String, Task>> iterator() {
+                Iterator<String> ids = locations.keySet().iterator();
+                return new Iterator<Map.Entry<String, Task>>() {
+                    private Map.Entry<String, Task> next = advance();
+
+                    private Map.Entry<String, Task> advance() {
+                        while (ids.hasNext()) {
+                            String id = ids.next();
+                            Task task = get(id);
+                            if (task != null) {
+                                return new AbstractMap.SimpleImmutableEntry<>(id, task);
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Task> next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<String, Task> current = next;
+                        next = advance();
+                        return current;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return locations.size();
+            }
+        };
+    }
+
+    /**
+     * Flush dirty pages to disk. A process crash never loses mapped writes (they sit in the
+     * OS page cache); this bounds what an OS crash can lose.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+}
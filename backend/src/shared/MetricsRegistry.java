@@ -15,6 +15,11 @@ public final class MetricsRegistry {
     public static final AtomicLong tcpRequests = new AtomicLong(0);
     public static final AtomicLong tcpBytesIn = new AtomicLong(0);
     public static final AtomicLong tcpBytesOut = new AtomicLong(0);
+    // Requests admitted and not yet answered, and requests refused with "Server busy"
+    public static final AtomicLong tcpInFlight = new AtomicLong(0);
+    public static final AtomicLong tcpRejected = new AtomicLong(0);
+    // Requests refused by the per-client rate limiter
+    public static final AtomicLong tcpRateLimited = new AtomicLong(0);
 
     // HTTP (Gateway)
     public static final AtomicLong httpConnections = new AtomicLong(0);
@@ -22,6 +27,21 @@ public final class MetricsRegistry {
     public static final AtomicLong httpRequests = new AtomicLong(0);
     public static final AtomicLong httpBytesIn = new AtomicLong(0);
     public static final AtomicLong httpBytesOut = new AtomicLong(0);
+    // Connections answered 503 because the thread pool was full
+    public static final AtomicLong httpRejected = new AtomicLong(0);
+    // Requests answered 429 by the per-client rate limiter
+    public static final AtomicLong httpRateLimited = new AtomicLong(0);
+    // Open Server-Sent Events streams (GET /events)
+    public static final AtomicLong httpEventStreams = new AtomicLong(0);
+
+    // Gateway connections to its backends: opened, reused from the pool, idle now; waits
+    // for a free connection (total ms, timeouts) and requests resent after a stale connection
+    public static final AtomicLong gatewayPoolOpened = new AtomicLong(0);
+    public static final AtomicLong gatewayPoolReused = new AtomicLong(0);
+    public static final AtomicLong gatewayPoolIdle = new AtomicLong(0);
+    public static final AtomicLong gatewayPoolWaitMs = new AtomicLong(0);
+    public static final AtomicLong gatewayPoolWaitTimeouts = new AtomicLong(0);
+    public static final AtomicLong gatewayPoolStaleRetries = new AtomicLong(0);
 
     // UDP
     public static final AtomicLong udpPacketsIn = new AtomicLong(0);
@@ -29,6 +49,17 @@ public final class MetricsRegistry {
     public static final AtomicLong udpBytesIn = new AtomicLong(0);
     public static final AtomicLong udpBytesOut = new AtomicLong(0);
 
+    // Shared worker pool (ThreadPoolManager): tasks waiting for a thread, tasks refused
+    public static final AtomicLong threadPoolQueued = new AtomicLong(0);
+    public static final AtomicLong threadPoolRejected = new AtomicLong(0);
+
+    // Rate limiter buckets currently held (TCP and HTTP together)
+    public static final AtomicLong rateLimitBuckets = new AtomicLong(0);
+
+    // Task store persistence
+    public static final AtomicLong storeCommits = new AtomicLong(0);
+    public static final AtomicLong storeRecordsCommitted = new AtomicLong(0);
+
     private MetricsRegistry() {}
 
     public static Map<String, Object> snapshot() {
@@ -40,6 +71,9 @@ public final class MetricsRegistry {
         tcp.put("requests", tcpRequests.get());
         tcp.put("bytesIn", tcpBytesIn.get());
         tcp.put("bytesOut", tcpBytesOut.get());
+        tcp.put("inFlight", tcpInFlight.get());
+        tcp.put("rejected", tcpRejected.get());
+        tcp.put("rateLimited", tcpRateLimited.get());
         m.put("tcp", tcp);
 
         Map<String, Object> http = new HashMap<>();
@@ -48,8 +82,20 @@ public final class MetricsRegistry {
         http.put("requests", httpRequests.get());
         http.put("bytesIn", httpBytesIn.get());
         http.put("bytesOut", httpBytesOut.get());
+        http.put("rejected", httpRejected.get());
+        http.put("rateLimited", httpRateLimited.get());
+        http.put("eventStreams", httpEventStreams.get());
         m.put("http", http);
 
+        Map<String, Object> gatewayPool = new HashMap<>();
+        gatewayPool.put("opened", gatewayPoolOpened.get());
+        gatewayPool.put("reused", gatewayPoolReused.get());
+        gatewayPool.put("idle", gatewayPoolIdle.get());
+        gatewayPool.put("waitMs", gatewayPoolWaitMs.get());
+        gatewayPool.put("waitTimeouts", gatewayPoolWaitTimeouts.get());
+        gatewayPool.put("staleRetries", gatewayPoolStaleRetries.get());
+        m.put("gatewayPool", gatewayPool);
+
         Map<String, Object> udp = new HashMap<>();
         udp.put("packetsIn", udpPacketsIn.get());
         udp.put("packetsOut", udpPacketsOut.get());
@@ -57,6 +103,20 @@ public final class MetricsRegistry {
         udp.put("bytesOut", udpBytesOut.get());
         m.put("udp", udp);
 
+        Map<String, Object> threads = new HashMap<>();
+        threads.put("queued", threadPoolQueued.get());
+        threads.put("rejected", threadPoolRejected.get());
+        m.put("threads", threads);
+
+        Map<String, Object> rateLimit = new HashMap<>();
+        rateLimit.put("buckets", rateLimitBuckets.get());
+        m.put("rateLimit", rateLimit);
+
+        Map<String, Object> store = new HashMap<>();
+        store.put("commits", storeCommits.get());
+        store.put("recordsCommitted", storeRecordsCommitted.get());
+        m.put("store", store);
+
         m.put("timestamp", System.currentTimeMillis());
         return m;
     }
@@ -5,6 +5,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Network programming concept: Producer-Consumer pattern using BlockingQueue
@@ -14,6 +15,9 @@ public class NotificationBroadcaster {
     
     // Thread-safe list of connected HTTP clients waiting for notifications
     private static final CopyOnWriteArrayList<PrintWriter> httpClients = new CopyOnWriteArrayList<>();
+
+    // In-process subscribers (the non-blocking gateway fans out to its own connections)
+    private static final CopyOnWriteArrayList<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
     
     // Blocking queue for notification distribution (producer-consumer pattern)
     private static final BlockingQueue<String> notificationQueue = new LinkedBlockingQueue<>();
@@ -82,10 +86,29 @@ public class NotificationBroadcaster {
                 httpClients.remove(client);
             }
         }
+        for (Consumer<String> listener : listeners) {
+            try {
+                listener.accept(notification);
+            } catch (RuntimeException e) {
+                System.err.println("[NotificationBroadcaster] Listener failed: " + e.getMessage());
+            }
+        }
         if (sent > 0) {
             System.out.println("[NotificationBroadcaster] Sent to " + sent + " HTTP clients");
         }
     }
+
+    /**
+     * Register a listener called with every notification, on the distributor thread.
+     * Listeners must not block: every other subscriber waits for them.
+     */
+    public static void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
     
     /**
      * Register HTTP client for SSE streaming
@@ -96,11 +119,12 @@ public class NotificationBroadcaster {
     }
     
     /**
-     * Unregister HTTP client
+     * Unregister HTTP client; false if it was not registered
      */
-    public static void removeHttpClient(PrintWriter client) {
-        httpClients.remove(client);
+    public static boolean removeHttpClient(PrintWriter client) {
+        boolean removed = httpClients.remove(client);
         System.out.println("[NotificationBroadcaster] HTTP client removed. Total: " + httpClients.size());
+        return removed;
     }
     
     /**
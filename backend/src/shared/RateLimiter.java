@@ -0,0 +1,208 @@
+package shared;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client token buckets, so one noisy client cannot take all the worker threads.
+ *
+ * Each (client, action class) pair has a bucket of 'burst' tokens refilled at 'rate' per
+ * second; a request takes one token or is refused with the time until the next one. Limits
+ * come from system properties, as "rate/burst" or "off":
+ *
+ *   netstream.rateLimit.read    GET_*, QUERY_*          default 100/200
+ *   netstream.rateLimit.write   CREATE_*, UPDATE_*, ... default 20/50
+ *   netstream.rateLimit.batch   BATCH_*                 default 2/5
+ *   netstream.rateLimit.other   anything else           default 50/100
+ *   netstream.rateLimit.<ACTION>  one action, with its own bucket (e.g. ...CREATE_TASK=5/10)
+ *   netstream.rateLimit.enabled   false turns every limiter off
+ *
+ * Limits are read once, when the limiter is built; a malformed value is reported and the
+ * group's default (or, for an action, its group's limit) is used instead. Requests only look
+ * actions up in that fixed table, so unknown action names cannot grow it.
+ *
+ * A bucket is one AtomicLong holding its "theoretical arrival time" (the GCRA form of a
+ * token bucket), so taking a token is a single CAS. Buckets live in a ConcurrentHashMap and
+ * are dropped by a periodic sweep once they have refilled completely, which is exactly the
+ * state a new bucket starts in. (A request racing with the sweep may land on a bucket that
+ * was just dropped; the client then gets at most one extra burst.)
+ */
+public final class RateLimiter {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("netstream.rateLimit.enabled", "true"));
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final Limit UNLIMITED = new Limit("unlimited", 0, 0);
+    private static final String PROPERTY_PREFIX = "netstream.rateLimit.";
+    private static final String[] GROUPS = { "read", "write", "batch", "other" };
+
+    private static final class Limit {
+        final String group; // bucket name: the action class, or the action if it has its own limit
+        final long intervalNanos; // one token per interval
+        final long toleranceNanos; // how far ahead of now a bucket may run: (burst - 1) intervals
+
+        Limit(String group, long intervalNanos, long toleranceNanos) {
+            this.group = group;
+            this.intervalNanos = intervalNanos;
+            this.toleranceNanos = toleranceNanos;
+        }
+    }
+
+    private final String name;
+    private final Set<String> trusted;
+    private final AtomicLong limitedCounter;
+    private final Map<String, Limit> groupLimits = new HashMap<>();
+    private final Map<String, Limit> actionLimits = new HashMap<>(); // netstream.rateLimit.<ACTION>
+    // client|group -> theoretical arrival time: when the bucket is full again (System.nanoTime())
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    /**
+     * @param name           for log lines ("tcp", "http")
+     * @param trusted        client keys that are never limited, comma-separated
+     * @param limitedCounter incremented for every refused request
+     */
+    public RateLimiter(String name, String trusted, AtomicLong limitedCounter) {
+        this.name = name;
+        this.trusted = trusted == null || trusted.isBlank() ? Collections.emptySet()
+                : new HashSet<>(Arrays.asList(trusted.trim().split("\\s*,\\s*")));
+        this.limitedCounter = limitedCounter;
+
+        for (String group : GROUPS) {
+            String spec = System.getProperty(PROPERTY_PREFIX + group, defaultLimit(group));
+            Limit limit = parseLimit(group, spec);
+            if (limit == null) {
+                System.err.println("[WARN] Invalid " + PROPERTY_PREFIX + group + "=" + spec
+                        + ", using the default " + defaultLimit(group));
+                limit = parseLimit(group, defaultLimit(group));
+            }
+            groupLimits.put(group, limit);
+        }
+        for (String property : System.getProperties().stringPropertyNames()) {
+            String action = property.startsWith(PROPERTY_PREFIX) ? property.substring(PROPERTY_PREFIX.length()) : "";
+            if (!action.matches("[A-Z][A-Z0-9_]*")) {
+                continue; // a group or another setting (enabled, tcpTrusted, ...), not an action
+            }
+            String spec = System.getProperty(property);
+            Limit limit = parseLimit(action, spec);
+            if (limit == null) {
+                System.err.println("[WARN] Invalid " + property + "=" + spec + ", using the "
+                        + actionClass(action) + " limit");
+                continue;
+            }
+            actionLimits.put(action, limit);
+        }
+    }
+
+    /**
+     * Take a token for one request of 'client' (an address or user name). Returns 0 if the
+     * request may proceed, otherwise the milliseconds until the client's next token.
+     */
+    public long tryAcquire(String client, String action) {
+        if (!ENABLED || trusted.contains(client)) {
+            return 0;
+        }
+        Limit limit = action == null ? null : actionLimits.get(action);
+        if (limit == null) {
+            limit = groupLimits.get(actionClass(action == null ? "" : action));
+        }
+        if (limit == UNLIMITED) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        String key = client + '|' + limit.group;
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> {
+                MetricsRegistry.rateLimitBuckets.incrementAndGet();
+                return new AtomicLong(now); // full
+            });
+        }
+        long tat;
+        long next;
+        do {
+            tat = bucket.get();
+            long start = tat - now > 0 ? tat : now;
+            if (start - now > limit.toleranceNanos) {
+                limitedCounter.incrementAndGet();
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(start - now - limit.toleranceNanos + 999_999));
+            }
+            next = start + limit.intervalNanos;
+        } while (!bucket.compareAndSet(tat, next));
+
+        sweepIfDue(now);
+        return 0;
+    }
+
+    /**
+     * Buckets currently held (clients seen recently, per action class).
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        int before = buckets.size();
+        // Full again (arrival time in the past): identical to a fresh bucket
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+        int removed = before - buckets.size();
+        MetricsRegistry.rateLimitBuckets.addAndGet(-removed);
+        if (removed > 0) {
+            System.out.println("[DEBUG] " + name + " rate limiter dropped " + removed + " idle buckets, " + buckets.size() + " left");
+        }
+    }
+
+    private static String actionClass(String action) {
+        if (action.startsWith("BATCH_")) {
+            return "batch";
+        }
+        if (action.startsWith("GET_") || action.startsWith("QUERY_")) {
+            return "read";
+        }
+        if (action.startsWith("CREATE_") || action.startsWith("UPDATE_") || action.startsWith("DELETE_")) {
+            return "write";
+        }
+        return "other";
+    }
+
+    private static String defaultLimit(String group) {
+        switch (group) {
+            case "read": return "100/200";
+            case "write": return "20/50";
+            case "batch": return "2/5";
+            default: return "50/100";
+        }
+    }
+
+    // "rate/burst" (burst defaults to rate) or "off"; null if malformed
+    private static Limit parseLimit(String group, String spec) {
+        if ("off".equalsIgnoreCase(spec.trim())) {
+            return UNLIMITED;
+        }
+        String[] parts = spec.trim().split("/");
+        double rate;
+        int burst;
+        try {
+            rate = Double.parseDouble(parts[0]);
+            burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : (int) Math.max(1, Math.ceil(rate));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (parts.length > 2 || !(rate > 0) || burst < 1) {
+            return null;
+        }
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        return new Limit(group, interval, interval * (burst - 1));
+    }
+}
@@ -0,0 +1,201 @@
+package shared;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory secondary indexes over tasks: status, assignee and priority (hash),
+ * deadline (sorted). Maps index values to task ids.
+ * Also keeps one ordered set of (value, id) keys per SortField for stable pagination.
+ *
+ * Reads are lock-free. The keys each task was indexed under are kept per id, so
+ * re-indexing never has to look up the task it replaces.
+ */
+public class SkipListTaskIndex implements TaskIndex {
+    private final Map<Task.Status, Set<String>> byStatus = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byAssignee = new ConcurrentHashMap<>();
+    private final Map<Task.Priority, Set<String>> byPriority = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Set<String>> byDeadline = new ConcurrentSkipListMap<>();
+
+    // Ordered (value, id) keys per sortable field
+    private final Map<SortField, ConcurrentSkipListSet<SortKey>> sorted = new EnumMap<>(SortField.class);
+
+    // id -> values the task is currently indexed under
+    private final Map<String, IndexedFields> indexed = new ConcurrentHashMap<>();
+
+    public SkipListTaskIndex() {
+        for (SortField field : SortField.values()) {
+            sorted.put(field, new ConcurrentSkipListSet<>());
+        }
+    }
+
+    private static class IndexedFields {
+        final Task.Status status;
+        final String assignee;
+        final Task.Priority priority;
+        final String deadline;
+        final Map<SortField, SortKey> sortKeys = new EnumMap<>(SortField.class);
+
+        IndexedFields(Task task) {
+            this.status = task.getStatus();
+            this.assignee = task.getAssignee();
+            this.priority = task.getPriority();
+            this.deadline = task.getDeadline();
+            sortKeys.put(SortField.CREATED_AT, new SortKey(SortKey.sortableMillis(task.getCreatedAt()), task.getId()));
+            sortKeys.put(SortField.UPDATED_AT, new SortKey(SortKey.sortableMillis(task.getUpdatedAt()), task.getId()));
+            sortKeys.put(SortField.DEADLINE, new SortKey(task.getDeadline(), task.getId()));
+            sortKeys.put(SortField.PRIORITY, new SortKey(SortKey.priorityRank(task.getPriority()), task.getId()));
+        }
+    }
+
+    /**
+     * Index a new task or re-index an existing one.
+     */
+    @Override
+    public void put(Task task) {
+        remove(task.getId());
+        IndexedFields fields = new IndexedFields(task);
+        indexed.put(task.getId(), fields);
+        addEntry(byStatus, fields.status, task.getId());
+        addEntry(byAssignee, fields.assignee, task.getId());
+        addEntry(byPriority, fields.priority, task.getId());
+        addEntry(byDeadline, fields.deadline, task.getId());
+        for (Map.Entry<SortField, SortKey> e : fields.sortKeys.entrySet()) {
+            sorted.get(e.getKey()).add(e.getValue());
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        IndexedFields fields = indexed.remove(id);
+        if (fields == null) {
+            return;
+        }
+        removeEntry(byStatus, fields.status, id);
+        removeEntry(byAssignee, fields.assignee, id);
+        removeEntry(byPriority, fields.priority, id);
+        removeEntry(byDeadline, fields.deadline, id);
+        for (Map.Entry<SortField, SortKey> e : fields.sortKeys.entrySet()) {
+            sorted.get(e.getKey()).remove(e.getValue());
+        }
+    }
+
+    @Override
+    public void rebuild(Collection<Task> tasks) {
+        clear();
+        for (Task task : tasks) {
+            put(task);
+        }
+    }
+
+    @Override
+    public void clear() {
+        indexed.clear();
+        byStatus.clear();
+        byAssignee.clear();
+        byPriority.clear();
+        byDeadline.clear();
+        for (ConcurrentSkipListSet<SortKey> keys : sorted.values()) {
+            keys.clear();
+        }
+    }
+
+    /**
+     * Sort keys strictly after 'after' (or from the start when null) in the requested order.
+     * The returned iterator walks the live skip list, so it costs O(log n) to position plus
+     * O(1) per key consumed.
+     */
+    @Override
+    public Iterator<SortKey> iterate(SortField field, boolean descending, SortKey after) {
+        NavigableSet<SortKey> keys = sorted.get(field);
+        if (descending) {
+            keys = keys.descendingSet();
+        }
+        if (after != null) {
+            keys = keys.tailSet(after, false);
+        }
+        return keys.iterator();
+    }
+
+    /**
+     * Candidate ids for a query, taken from the most selective index that applies.
+     * Returns null when the query has no filters (caller should scan everything).
+     * Candidates still need to be checked with TaskQuery.matches().
+     */
+    @Override
+    public Collection<String> candidates(TaskQuery query) {
+        Collection<String> best = null;
+        if (query.getStatus() != null) {
+            best = smaller(best, lookup(byStatus, query.getStatus()));
+        }
+        if (query.getAssignee() != null) {
+            best = smaller(best, lookup(byAssignee, query.getAssignee()));
+        }
+        if (query.getPriority() != null) {
+            best = smaller(best, lookup(byPriority, query.getPriority()));
+        }
+        if (query.hasDeadlineRange() && (best == null || !best.isEmpty())) {
+            best = smaller(best, deadlineRange(query.getDeadlineFrom(), query.getDeadlineTo()));
+        }
+        return best;
+    }
+
+    private Collection<String> deadlineRange(String from, String to) {
+        NavigableMap<String, Set<String>> range;
+        if (from != null && to != null) {
+            if (from.compareTo(to) > 0) {
+                return Collections.emptyList();
+            }
+            range = byDeadline.subMap(from, true, to, true);
+        } else if (from != null) {
+            range = byDeadline.tailMap(from, true);
+        } else {
+            range = byDeadline.headMap(to, true);
+        }
+        List<String> ids = new ArrayList<>();
+        for (Set<String> bucket : range.values()) {
+            ids.addAll(bucket);
+        }
+        return ids;
+    }
+
+    private static <K> Collection<String> lookup(Map<K, Set<String>> index, K value) {
+        Set<String> ids = index.get(value);
+        return ids != null ? ids : Collections.emptySet();
+    }
+
+    private static Collection<String> smaller(Collection<String> current, Collection<String> candidate) {
+        return current == null || candidate.size() < current.size() ? candidate : current;
+    }
+
+    private static <K> void addEntry(Map<K, Set<String>> index, K value, String id) {
+        if (value == null || "".equals(value)) {
+            return;
+        }
+        index.computeIfAbsent(value, k -> ConcurrentHashMap.newKeySet()).add(id);
+    }
+
+    private static <K> void removeEntry(Map<K, Set<String>> index, K value, String id) {
+        if (value == null || "".equals(value)) {
+            return;
+        }
+        Set<String> ids = index.get(value);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(value, ids);
+            }
+        }
+    }
+}
@@ -1,39 +1,132 @@
 package shared;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
 import java.io.Serializable;
+import java.time.DateTimeException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
-public class Task implements Serializable {
-    private String id;
-    private String title;
-    private String assignee;
-    private String status; // "pending", "in-progress", "completed"
-    private String deadline;
-    private String priority; // "low", "medium", "high"
-    private String description;
-    private String attachedUrl;
-    private String weatherNote;
-    private String createdAt;
-    private String updatedAt;
-
-    // Constructor
-    public Task(String id, String title, String assignee, String deadline, String priority) {
-        this.id = id;
-        this.title = title;
-        this.assignee = assignee;
-        this.status = "pending";
-        this.deadline = deadline;
-        this.priority = priority;
-        this.createdAt = getCurrentTimestamp();
-        this.updatedAt = getCurrentTimestamp();
-        this.description = "";
-        this.attachedUrl = "";
-        this.weatherNote = "";
-    }
-
-    // Default constructor for JSON deserialization
-    public Task() {
+/**
+ * Immutable task. Stored tasks are shared between threads, so a change is a new Task
+ * built with toBuilder() that replaces the stored one (DataStore.updateTask).
+ *
+ * Status and priority are enums and timestamps are epoch millis; GsonAdapter keeps the
+ * JSON wire format unchanged ("in-progress", "high", ISO local date-time strings).
+ */
+@JsonAdapter(Task.GsonAdapter.class)
+public final class Task implements Serializable {
+
+    public enum Status {
+        PENDING("pending"),
+        IN_PROGRESS("in-progress"),
+        COMPLETED("completed");
+
+        private final String wireName;
+
+        Status(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String getWireName() {
+            return wireName;
+        }
+
+        public static Status fromString(String value) {
+            for (Status status : values()) {
+                if (status.wireName.equalsIgnoreCase(value) || status.name().equalsIgnoreCase(value)) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("Invalid status: " + value);
+        }
+    }
+
+    public enum Priority {
+        LOW("low"),
+        MEDIUM("medium"),
+        HIGH("high");
+
+        private final String wireName;
+
+        Priority(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String getWireName() {
+            return wireName;
+        }
+
+        public static Priority fromString(String value) {
+            for (Priority priority : values()) {
+                if (priority.wireName.equalsIgnoreCase(value)) {
+                    return priority;
+                }
+            }
+            throw new IllegalArgumentException("Invalid priority: " + value);
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final String id;
+    private final String title;
+    private final String assignee;
+    private final Status status;
+    private final String deadline;
+    private final Priority priority; // null if never set
+    private final String description;
+    private final String attachedUrl;
+    private final String weatherNote;
+    private final long createdAt; // epoch millis, 0 if unknown
+    private final long updatedAt;
+    private final long version; // bumped by the repository on every stored change; 0 = never stored
+
+    private Task(Builder b) {
+        this.id = b.id;
+        this.title = b.title;
+        this.assignee = b.assignee;
+        this.status = b.status;
+        this.deadline = b.deadline;
+        this.priority = b.priority;
+        this.description = b.description;
+        this.attachedUrl = b.attachedUrl;
+        this.weatherNote = b.weatherNote;
+        this.createdAt = b.createdAt;
+        this.updatedAt = b.updatedAt;
+        this.version = b.version;
+    }
+
+    /**
+     * A new pending task created now.
+     */
+    public static Builder builder(String id) {
+        long now = System.currentTimeMillis();
+        return new Builder().id(id).deadline("").description("").attachedUrl("").weatherNote("")
+                .createdAt(now).updatedAt(now);
+    }
+
+    // Empty builder for restoring stored tasks exactly (no defaults, no timestamps)
+    static Builder restore() {
+        return new Builder();
+    }
+
+    /**
+     * Builder starting from this task's fields, for partial updates.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
     }
 
     // Getters
@@ -49,7 +142,7 @@ public class Task implements Serializable {
         return assignee;
     }
 
-    public String getStatus() {
+    public Status getStatus() {
         return status;
     }
 
@@ -57,7 +150,7 @@ public class Task implements Serializable {
         return deadline;
     }
 
-    public String getPriority() {
+    public Priority getPriority() {
         return priority;
     }
 
@@ -65,70 +158,122 @@ public class Task implements Serializable {
     public String getAttachedUrl() { return attachedUrl; }
     public String getWeatherNote() { return weatherNote; }
 
-    public String getCreatedAt() {
+    public long getCreatedAt() {
         return createdAt;
     }
 
-    public String getUpdatedAt() {
+    public long getUpdatedAt() {
         return updatedAt;
     }
 
-    // Setters
-    public void setId(String id) {
-        this.id = id;
+    public long getVersion() {
+        return version;
     }
 
-    public void setTitle(String title) {
-        this.title = title;
-        this.updatedAt = getCurrentTimestamp();
+    // Used by the repository to stamp the stored copy
+    Task withVersion(long version) {
+        return toBuilder().version(version).build();
     }
 
-    public void setAssignee(String assignee) {
-        this.assignee = assignee;
-        this.updatedAt = getCurrentTimestamp();
+    // Timestamp helpers, shared with the snapshot codec
+    static String formatTimestamp(long millis) {
+        if (millis == 0) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZONE).format(TIMESTAMP_FORMAT);
     }
 
-    public void setStatus(String status) {
-        this.status = status;
-        this.updatedAt = getCurrentTimestamp();
+    static long parseTimestamp(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        try {
+            LocalDateTime time = parseFixedTimestamp(value);
+            if (time == null) {
+                time = LocalDateTime.parse(value, TIMESTAMP_FORMAT);
+            }
+            return time.atZone(ZONE).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid timestamp: " + value);
+        }
     }
 
-    public void setDeadline(String deadline) {
-        this.deadline = deadline;
-        this.updatedAt = getCurrentTimestamp();
+    // Fast path for "yyyy-MM-ddTHH:mm:ss[.fraction]", the only layout this server writes;
+    // snapshot loads parse two of these per task. Returns null for anything else.
+    private static LocalDateTime parseFixedTimestamp(String v) {
+        int len = v.length();
+        if (len < 19 || len > 29 || v.charAt(4) != '-' || v.charAt(7) != '-' || v.charAt(10) != 'T'
+                || v.charAt(13) != ':' || v.charAt(16) != ':' || (len > 19 && (len == 20 || v.charAt(19) != '.'))) {
+            return null;
+        }
+        int nanos = 0;
+        for (int i = 20; i < 29; i++) {
+            int digit = i < len ? digit(v, i) : 0;
+            if (digit < 0) {
+                return null;
+            }
+            nanos = nanos * 10 + digit;
+        }
+        int year = number(v, 0, 4), month = number(v, 5, 7), day = number(v, 8, 10);
+        int hour = number(v, 11, 13), minute = number(v, 14, 16), second = number(v, 17, 19);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second, nanos);
     }
 
-    public void setPriority(String priority) {
-        this.priority = priority;
-        this.updatedAt = getCurrentTimestamp();
+    private static int number(String v, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            int digit = digit(v, i);
+            if (digit < 0) {
+                return -1;
+            }
+            n = n * 10 + digit;
+        }
+        return n;
     }
 
-    public void setDescription(String description) {
-        this.description = description;
-        this.updatedAt = getCurrentTimestamp();
+    private static int digit(String v, int i) {
+        char c = v.charAt(i);
+        return c >= '0' && c <= '9' ? c - '0' : -1;
     }
 
-    public void setAttachedUrl(String attachedUrl) {
-        this.attachedUrl = attachedUrl;
-        this.updatedAt = getCurrentTimestamp();
+    static String wireName(Status status) {
+        return status != null ? status.getWireName() : null;
     }
 
-    public void setWeatherNote(String weatherNote) {
-        this.weatherNote = weatherNote;
-        this.updatedAt = getCurrentTimestamp();
+    static String wireName(Priority priority) {
+        return priority != null ? priority.getWireName() : null;
     }
 
-    public void setCreatedAt(String createdAt) {
-        this.createdAt = createdAt;
+    // Empty or missing priority means none; the original model allowed that
+    static Priority parsePriority(String value) {
+        return value == null || value.isEmpty() ? null : Priority.fromString(value);
     }
 
-    public void setUpdatedAt(String updatedAt) {
-        this.updatedAt = updatedAt;
+    static Status parseStatus(String value) {
+        return value == null || value.isEmpty() ? Status.PENDING : Status.fromString(value);
     }
 
-    // Helper method
-    private String getCurrentTimestamp() {
-        return LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    // Stored tasks predate the enums and may hold any string; requests are still checked strictly
+    static Status readStatus(String id, String value) {
+        try {
+            return parseStatus(value);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[WARN] Task " + id + " has unknown status '" + value + "', loaded as "
+                    + Status.PENDING.getWireName());
+            return Status.PENDING;
+        }
+    }
+
+    static Priority readPriority(String id, String value) {
+        try {
+            return parsePriority(value);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[WARN] Task " + id + " has unknown priority '" + value + "', loaded without a priority");
+            return null;
+        }
     }
 
     @Override
@@ -137,11 +282,142 @@ public class Task implements Serializable {
                 "id='" + id + '\'' +
                 ", title='" + title + '\'' +
                 ", assignee='" + assignee + '\'' +
-                ", status='" + status + '\'' +
+                ", status='" + wireName(status) + '\'' +
                 ", deadline='" + deadline + '\'' +
-                ", priority='" + priority + '\'' +
-                ", createdAt='" + createdAt + '\'' +
-                ", updatedAt='" + updatedAt + '\'' +
+                ", priority='" + wireName(priority) + '\'' +
+                ", createdAt='" + formatTimestamp(createdAt) + '\'' +
+                ", updatedAt='" + formatTimestamp(updatedAt) + '\'' +
+                ", version=" + version +
                 '}';
     }
-}
\ No newline at end of file
+
+    public static final class Builder {
+        private String id;
+        private String title;
+        private String assignee;
+        private Status status = Status.PENDING;
+        private String deadline;
+        private Priority priority;
+        private String description;
+        private String attachedUrl;
+        private String weatherNote;
+        private long createdAt;
+        private long updatedAt;
+        private long version;
+
+        private Builder() {
+        }
+
+        private Builder(Task task) {
+            this.id = task.id;
+            this.title = task.title;
+            this.assignee = task.assignee;
+            this.status = task.status;
+            this.deadline = task.deadline;
+            this.priority = task.priority;
+            this.description = task.description;
+            this.attachedUrl = task.attachedUrl;
+            this.weatherNote = task.weatherNote;
+            this.createdAt = task.createdAt;
+            this.updatedAt = task.updatedAt;
+            this.version = task.version;
+        }
+
+        public Builder id(String id) { this.id = id; return this; }
+        public Builder title(String title) { this.title = title; return this; }
+        public Builder assignee(String assignee) { this.assignee = assignee; return this; }
+        public Builder status(Status status) { this.status = status; return this; }
+        public Builder deadline(String deadline) { this.deadline = deadline; return this; }
+        public Builder priority(Priority priority) { this.priority = priority; return this; }
+        public Builder description(String description) { this.description = description; return this; }
+        public Builder attachedUrl(String attachedUrl) { this.attachedUrl = attachedUrl; return this; }
+        public Builder weatherNote(String weatherNote) { this.weatherNote = weatherNote; return this; }
+        public Builder createdAt(long createdAt) { this.createdAt = createdAt; return this; }
+        public Builder updatedAt(long updatedAt) { this.updatedAt = updatedAt; return this; }
+
+        // Wire-format setters (request fields, snapshots)
+        public Builder status(String status) { return status(parseStatus(status)); }
+        public Builder priority(String priority) { return priority(parsePriority(priority)); }
+
+        Builder version(long version) { this.version = version; return this; }
+
+        public Task build() {
+            if (id == null) {
+                throw new IllegalStateException("Task id is required");
+            }
+            return new Task(this);
+        }
+    }
+
+    /**
+     * JSON form: the field names and string values of the original mutable Task, plus version.
+     */
+    static final class GsonAdapter extends TypeAdapter<Task> {
+        @Override
+        public void write(JsonWriter out, Task task) throws IOException {
+            if (task == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(task.id);
+            out.name("title").value(task.title);
+            out.name("assignee").value(task.assignee);
+            out.name("status").value(wireName(task.status));
+            out.name("deadline").value(task.deadline);
+            out.name("priority").value(wireName(task.priority));
+            out.name("description").value(task.description);
+            out.name("attachedUrl").value(task.attachedUrl);
+            out.name("weatherNote").value(task.weatherNote);
+            out.name("createdAt").value(formatTimestamp(task.createdAt));
+            out.name("updatedAt").value(formatTimestamp(task.updatedAt));
+            out.name("version").value(task.version);
+            out.endObject();
+        }
+
+        @Override
+        public Task read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Builder b = new Builder();
+            String status = null;
+            String priority = null;
+            in.beginObject();
+            try {
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                        continue;
+                    }
+                    switch (name) {
+                        case "id": b.id = in.nextString(); break;
+                        case "title": b.title = in.nextString(); break;
+                        case "assignee": b.assignee = in.nextString(); break;
+                        case "status": status = in.nextString(); break;
+                        case "deadline": b.deadline = in.nextString(); break;
+                        case "priority": priority = in.nextString(); break;
+                        case "description": b.description = in.nextString(); break;
+                        case "attachedUrl": b.attachedUrl = in.nextString(); break;
+                        case "weatherNote": b.weatherNote = in.nextString(); break;
+                        case "createdAt": b.createdAt = parseTimestamp(in.nextString()); break;
+                        case "updatedAt": b.updatedAt = parseTimestamp(in.nextString()); break;
+                        case "version": b.version = in.nextLong(); break;
+                        default: in.skipValue();
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                throw new JsonParseException(e.getMessage(), e);
+            }
+            in.endObject();
+            if (b.id == null) {
+                throw new JsonParseException("Task without id");
+            }
+            b.status(readStatus(b.id, status));
+            b.priority(readPriority(b.id, priority));
+            return b.build();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package shared;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Several mutations applied together by TaskRepository.apply(): under one lock, persisted
+ * with one write, and reported item by item. An item that fails (unknown id, version
+ * conflict, invalid change) does not stop the others.
+ */
+public class TaskBatch {
+    public enum Type { PUT, UPDATE, DELETE }
+
+    public static final class Op {
+        private final Type type;
+        private final String taskId;
+        private final Task task;
+        private final long expectedVersion;
+        private final UnaryOperator<Task> change;
+
+        private Op(Type type, String taskId, Task task, long expectedVersion, UnaryOperator<Task> change) {
+            this.type = type;
+            this.taskId = taskId;
+            this.task = task;
+            this.expectedVersion = expectedVersion;
+            this.change = change;
+        }
+
+        public Type getType() { return type; }
+        public String getTaskId() { return taskId; }
+        public Task getTask() { return task; }
+        public long getExpectedVersion() { return expectedVersion; }
+        public UnaryOperator<Task> getChange() { return change; }
+    }
+
+    /**
+     * Outcome of one item, in the order the items were added.
+     */
+    public static final class Result {
+        public enum Outcome { CREATED, UPDATED, DELETED, NOT_FOUND, CONFLICT, FAILED }
+
+        private final Outcome outcome;
+        private final String taskId;
+        private final Task task; // stored task for CREATED/UPDATED, removed task for DELETED
+        private final long currentVersion; // for CONFLICT
+        private final String error; // for FAILED
+
+        Result(Outcome outcome, String taskId, Task task, long currentVersion, String error) {
+            this.outcome = outcome;
+            this.taskId = taskId;
+            this.task = task;
+            this.currentVersion = currentVersion;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return outcome == Outcome.CREATED || outcome == Outcome.UPDATED || outcome == Outcome.DELETED;
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public String getTaskId() { return taskId; }
+        public Task getTask() { return task; }
+        public long getCurrentVersion() { return currentVersion; }
+        public String getError() { return error; }
+    }
+
+    private final List<Op> ops = new ArrayList<>();
+
+    /**
+     * Insert or replace, like TaskRepository.put().
+     */
+    public TaskBatch put(Task task) {
+        ops.add(new Op(Type.PUT, task.getId(), task, DataStore.ANY_VERSION, null));
+        return this;
+    }
+
+    /**
+     * Replace the task with change(current), if it exists and is at expectedVersion
+     * (DataStore.ANY_VERSION to skip the check).
+     */
+    public TaskBatch update(String taskId, long expectedVersion, UnaryOperator<Task> change) {
+        ops.add(new Op(Type.UPDATE, taskId, null, expectedVersion, change));
+        return this;
+    }
+
+    public TaskBatch delete(String taskId) {
+        ops.add(new Op(Type.DELETE, taskId, null, DataStore.ANY_VERSION, null));
+        return this;
+    }
+
+    public List<Op> getOps() {
+        return Collections.unmodifiableList(ops);
+    }
+
+    public int size() {
+        return ops.size();
+    }
+}
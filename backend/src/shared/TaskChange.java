@@ -0,0 +1,26 @@
+package shared;
+
+/**
+ * One entry of the DataStore change log. 'task' is filled in with the current
+ * state when changes are returned to a client (null for deletes).
+ */
+public class TaskChange {
+    public enum Op { CREATED, UPDATED, DELETED }
+
+    private final long version;
+    private final Op op;
+    private final String taskId;
+    private final Task task;
+
+    public TaskChange(long version, Op op, String taskId, Task task) {
+        this.version = version;
+        this.op = op;
+        this.taskId = taskId;
+        this.task = task;
+    }
+
+    public long getVersion() { return version; }
+    public Op getOp() { return op; }
+    public String getTaskId() { return taskId; }
+    public Task getTask() { return task; }
+}
@@ -0,0 +1,35 @@
+package shared;
+
+import java.util.List;
+
+/**
+ * Result of DataStore.getChangesSince(). Either a delta (full = false, 'changes' set)
+ * or, when the requested version is no longer covered by the change log, a full
+ * snapshot (full = true, 'tasks' set). Clients pass 'version' back on the next call.
+ */
+public class TaskChangeSet {
+    private final long version;
+    private final boolean full;
+    private final List<TaskChange> changes;
+    private final List<Task> tasks;
+
+    private TaskChangeSet(long version, boolean full, List<TaskChange> changes, List<Task> tasks) {
+        this.version = version;
+        this.full = full;
+        this.changes = changes;
+        this.tasks = tasks;
+    }
+
+    public static TaskChangeSet delta(long version, List<TaskChange> changes) {
+        return new TaskChangeSet(version, false, changes, null);
+    }
+
+    public static TaskChangeSet snapshot(long version, List<Task> tasks) {
+        return new TaskChangeSet(version, true, null, tasks);
+    }
+
+    public long getVersion() { return version; }
+    public boolean isFull() { return full; }
+    public List<TaskChange> getChanges() { return changes; }
+    public List<Task> getTasks() { return tasks; }
+}
@@ -0,0 +1,111 @@
+package shared;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Secondary indexes over a repository's tasks: status, assignee, priority and deadline
+ * lookups for queries, and one order per SortField for stable pagination.
+ *
+ *   SkipListTaskIndex - hash buckets and skip lists of keys (memory and wal engines)
+ *   CompactTaskIndex  - fields in primitive arrays, no per-task objects (mmap engine)
+ *
+ * Writes must be serialized by the caller (the repository holds its write lock); reads may
+ * run concurrently with them and are weakly consistent.
+ */
+public interface TaskIndex {
+
+    /**
+     * Fields GET_TASKS can be sorted by.
+     */
+    enum SortField {
+        CREATED_AT("createdAt"),
+        UPDATED_AT("updatedAt"),
+        DEADLINE("deadline"),
+        PRIORITY("priority");
+
+        private final String wireName;
+
+        SortField(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public String getWireName() {
+            return wireName;
+        }
+
+        public static SortField fromString(String value) {
+            for (SortField field : values()) {
+                if (field.wireName.equals(value)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported sortBy: " + value);
+        }
+    }
+
+    /**
+     * Position of a task in a sorted index. Ties on value are broken by id so order is total and stable.
+     */
+    final class SortKey implements Comparable<SortKey> {
+        private final String value;
+        private final String id;
+
+        public SortKey(String value, String id) {
+            this.value = value != null ? value : "";
+            this.id = id;
+        }
+
+        public String getValue() { return value; }
+        public String getId() { return id; }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int c = value.compareTo(other.value);
+            return c != 0 ? c : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SortKey && compareTo((SortKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * value.hashCode() + id.hashCode();
+        }
+
+        // Sorts low < medium < high; tasks without a priority first
+        static String priorityRank(Task.Priority priority) {
+            return priority == null ? "0" : String.valueOf(priority.ordinal() + 1);
+        }
+
+        // Zero-padded so string order matches numeric order (sort keys are strings for the cursor)
+        static String sortableMillis(long millis) {
+            return String.format("%015d", millis);
+        }
+    }
+
+    /**
+     * Index a new task or re-index an existing one.
+     */
+    void put(Task task);
+
+    void remove(String id);
+
+    void rebuild(Collection<Task> tasks);
+
+    void clear();
+
+    /**
+     * Sort keys strictly after 'after' (or from the start when null) in the requested order.
+     */
+    Iterator<SortKey> iterate(SortField field, boolean descending, SortKey after);
+
+    /**
+     * Candidate ids for a query, taken from the indexes that apply.
+     * Returns null when the query has no filters (caller should scan everything).
+     * Candidates still need to be checked with TaskQuery.matches().
+     */
+    Collection<String> candidates(TaskQuery query);
+}
@@ -0,0 +1,355 @@
+package shared;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Append-only write-ahead log of task mutations.
+ * One compact JSON record per line:
+ *   {"op":"PUT","task":{...}}
+ *   {"op":"DELETE","id":"task_123"}
+ * Records are idempotent, so replaying a log over a newer snapshot is safe.
+ *
+ * Appends are queued and written by a commit stage that batches every pending record
+ * into one write + fsync. Each append returns a future that completes once its record
+ * is on disk, so callers decide whether to wait for durability.
+ */
+public class TaskLog {
+    private static final Gson gson = new Gson();
+
+    /**
+     * When records reach the disk relative to the caller.
+     */
+    public enum SyncMode {
+        EVERY_WRITE,   // caller writes and fsyncs its own record before returning
+        GROUP_COMMIT,  // writer thread batches records per commit window, caller waits for the fsync
+        ASYNC;         // writer thread batches records, caller does not wait
+
+        public static SyncMode fromString(String value) {
+            switch (value.trim().toLowerCase()) {
+                case "every-write":
+                    return EVERY_WRITE;
+                case "async":
+                    return ASYNC;
+                case "group-commit":
+                    return GROUP_COMMIT;
+                default:
+                    throw new IllegalArgumentException("Unknown persistence mode: " + value);
+            }
+        }
+    }
+
+    private static class PendingRecord {
+        final byte[] bytes;
+        final int records; // lines in 'bytes'; more than one for a batch
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        PendingRecord(byte[] bytes, int records) {
+            this.bytes = bytes;
+            this.records = records;
+        }
+    }
+
+    private final Path path;
+    private final SyncMode mode;
+    private final long commitWindowMs;
+    private final int maxBatch;
+
+    // Records waiting for the next commit, guarded by queueLock
+    private final Object queueLock = new Object();
+    private List<PendingRecord> pending = new ArrayList<>();
+
+    // Channel and counters are guarded by 'this'; a commit holds it for the whole write + fsync
+    private FileChannel channel;
+    private long recordCount = 0;
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    public TaskLog(Path path) {
+        this(path, SyncMode.EVERY_WRITE, 0, 1);
+    }
+
+    public TaskLog(Path path, SyncMode mode, long commitWindowMs, int maxBatch) {
+        this.path = path;
+        this.mode = mode;
+        this.commitWindowMs = commitWindowMs;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public SyncMode getMode() {
+        return mode;
+    }
+
+    public synchronized void open() throws IOException {
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        if (mode != SyncMode.EVERY_WRITE && writerThread == null) {
+            running = true;
+            writerThread = new Thread(this::runWriter, "TaskLog-Writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Commit everything still pending, stop the writer and close the file.
+     */
+    public void close() throws IOException {
+        running = false;
+        synchronized (queueLock) {
+            queueLock.notifyAll();
+        }
+        if (writerThread != null) {
+            try {
+                writerThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writerThread = null;
+        }
+        synchronized (this) {
+            commitPending();
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    public CompletableFuture<Void> appendPut(Task task) {
+        return append(new PendingRecord(putRecord(task).getBytes(StandardCharsets.UTF_8), 1));
+    }
+
+    public CompletableFuture<Void> appendDelete(String id) {
+        return append(new PendingRecord(deleteRecord(id).getBytes(StandardCharsets.UTF_8), 1));
+    }
+
+    /**
+     * Append one record per change as a single entry, so the whole batch goes out in the
+     * same write and fsync however large it is. Deletes are logged as DELETE, the rest as PUT.
+     */
+    public CompletableFuture<Void> appendBatch(List<TaskChange> changes) {
+        StringBuilder records = new StringBuilder(changes.size() * 256);
+        for (TaskChange change : changes) {
+            records.append(change.getOp() == TaskChange.Op.DELETED
+                    ? deleteRecord(change.getTaskId()) : putRecord(change.getTask()));
+        }
+        return append(new PendingRecord(records.toString().getBytes(StandardCharsets.UTF_8), changes.size()));
+    }
+
+    // Same line as a JsonObject with "op" and "task" would give, without building the tree
+    private static String putRecord(Task task) {
+        return "{\"op\":\"PUT\",\"task\":" + gson.toJson(task) + "}\n";
+    }
+
+    private static String deleteRecord(String id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "DELETE");
+        record.addProperty("id", id);
+        return record + "\n";
+    }
+
+    private CompletableFuture<Void> append(PendingRecord entry) {
+        synchronized (queueLock) {
+            pending.add(entry);
+            if (pending.size() == 1 || pending.size() >= maxBatch) {
+                queueLock.notifyAll();
+            }
+        }
+        if (mode == SyncMode.EVERY_WRITE) {
+            synchronized (this) {
+                commitPending();
+            }
+        }
+        return entry.committed;
+    }
+
+    /**
+     * Writer thread: wait for the first record, give concurrent writers one commit window
+     * (or until maxBatch records are queued) to join the batch, then commit them together.
+     */
+    private void runWriter() {
+        while (running) {
+            try {
+                synchronized (queueLock) {
+                    while (running && pending.isEmpty()) {
+                        queueLock.wait();
+                    }
+                    long deadline = System.currentTimeMillis() + commitWindowMs;
+                    long remaining = commitWindowMs;
+                    while (running && pending.size() < maxBatch && remaining > 0) {
+                        queueLock.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                }
+                synchronized (this) {
+                    commitPending();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Write all pending records with a single gathering write and one fsync.
+     * Must be called while holding 'this' so batches reach the file in append order.
+     */
+    private void commitPending() {
+        List<PendingRecord> batch;
+        synchronized (queueLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        long start = -1;
+        try {
+            if (channel == null) {
+                throw new IOException("Task log is not open: " + path);
+            }
+            start = channel.size();
+            ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+            long total = 0;
+            int records = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                buffers[i] = ByteBuffer.wrap(batch.get(i).bytes);
+                total += batch.get(i).bytes.length;
+                records += batch.get(i).records;
+            }
+            long written = 0;
+            while (written < total) {
+                written += channel.write(buffers);
+            }
+            channel.force(false);
+            recordCount += records;
+            MetricsRegistry.storeCommits.incrementAndGet();
+            MetricsRegistry.storeRecordsCommitted.addAndGet(records);
+
+            for (PendingRecord entry : batch) {
+                entry.committed.complete(null);
+            }
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to commit " + batch.size() + " log records: " + e.getMessage());
+            // Cut off whatever part of the batch did reach the file, so no partial line sits
+            // in front of the records that are acknowledged next
+            if (start >= 0) {
+                try {
+                    channel.truncate(start);
+                } catch (IOException truncateFailure) {
+                    System.err.println("[ERROR] Failed to truncate " + path.toAbsolutePath() + " after a failed commit: "
+                            + truncateFailure.getMessage());
+                }
+            }
+            for (PendingRecord entry : batch) {
+                entry.committed.completeExceptionally(e);
+            }
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Commit pending records, then move the current file to 'target' and continue in a fresh file.
+     * Used by compaction; the caller snapshots the data set before rotating. Fails if 'target'
+     * exists, since it would still hold records not yet in any snapshot.
+     */
+    public synchronized void rotate(Path target) throws IOException {
+        if (Files.exists(target)) {
+            throw new FileAlreadyExistsException(target.toString(), null, "rotated log not yet compacted");
+        }
+        commitPending();
+        channel.close();
+        Files.move(path, target);
+        channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        recordCount = 0;
+    }
+
+    /**
+     * Apply every record in the log to the given map.
+     * Only a torn record is cut off: an unreadable last line with no newline (crash mid-write),
+     * so later appends start on a clean line. An unreadable line anywhere else was written whole;
+     * it is reported and skipped, and the records after it are still applied.
+     * Returns the number of records applied.
+     */
+    public synchronized long replay(Map<String, Task> target) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        long fileSize = Files.size(path);
+        long applied = 0;
+        long offset = 0; // start of the current line
+        long lineNumber = 0;
+        boolean torn = false;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                long end = offset + line.getBytes(StandardCharsets.UTF_8).length; // where its newline is
+                if (!line.isEmpty()) {
+                    try {
+                        JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+                        String op = record.get("op").getAsString();
+                        if ("PUT".equals(op)) {
+                            Task task = gson.fromJson(record.get("task"), Task.class);
+                            target.put(task.getId(), task);
+                        } else if ("DELETE".equals(op)) {
+                            target.remove(record.get("id").getAsString());
+                        }
+                        applied++;
+                    } catch (RuntimeException e) {
+                        if (end >= fileSize) {
+                            torn = true;
+                            break;
+                        }
+                        System.err.println("[ERROR] Skipping unreadable record at line " + lineNumber + " of "
+                                + path.toAbsolutePath() + ": " + e.getMessage());
+                    }
+                }
+                offset = end + 1;
+            }
+        }
+
+        if (torn) {
+            System.err.println("[WARN] Discarding torn record at end of " + path.toAbsolutePath());
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(offset);
+            }
+        } else if (offset > fileSize) {
+            // Last record lost only its newline; terminate it before appending more
+            Files.write(path, new byte[] { '\n' }, StandardOpenOption.APPEND);
+        }
+
+        recordCount += applied;
+        return applied;
+    }
+}
@@ -0,0 +1,133 @@
+package shared;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compares the immutable Task with the mutable String-field model it replaced (MutableTask
+ * below): heap retained per task in a map and the cost of one status change on every task,
+ * done as each model does it (copy + setter vs toBuilder()). Run with a fixed heap.
+ *
+ *   java -Xmx2g shared.TaskModelBenchmark [taskCount]
+ */
+public class TaskModelBenchmark {
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Map<String, MutableTask> mutable = new ConcurrentHashMap<>();
+        System.gc();
+        long baseline = usedHeap();
+        for (int i = 0; i < count; i++) {
+            MutableTask task = new MutableTask("task_" + i, "Task number " + i, "member" + (i % 50),
+                    "2025-11-" + (10 + i % 20), i % 3 == 0 ? "high" : "medium");
+            task.setDescription("Generated task " + i);
+            mutable.put(task.id, task);
+        }
+        System.gc();
+        long retained = usedHeap() - baseline;
+        long start = System.nanoTime();
+        for (MutableTask task : mutable.values()) {
+            MutableTask copy = new MutableTask(task);
+            copy.setStatus("completed");
+            mutable.put(copy.id, copy);
+        }
+        System.out.printf("[Model] mutable    %,d tasks  retained %,d bytes/task  status update %,d ms%n",
+                count, retained / Math.max(count, 1), (System.nanoTime() - start) / 1_000_000);
+        mutable.clear();
+
+        Map<String, Task> immutable = new ConcurrentHashMap<>();
+        System.gc();
+        baseline = usedHeap();
+        for (int i = 0; i < count; i++) {
+            Task task = Task.builder("task_" + i)
+                    .title("Task number " + i)
+                    .assignee("member" + (i % 50))
+                    .deadline("2025-11-" + (10 + i % 20))
+                    .priority(i % 3 == 0 ? Task.Priority.HIGH : Task.Priority.MEDIUM)
+                    .description("Generated task " + i)
+                    .build();
+            immutable.put(task.getId(), task);
+        }
+        System.gc();
+        retained = usedHeap() - baseline;
+        start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        for (Task task : immutable.values()) {
+            immutable.put(task.getId(), task.toBuilder().status(Task.Status.COMPLETED).updatedAt(now).build());
+        }
+        System.out.printf("[Model] immutable  %,d tasks  retained %,d bytes/task  status update %,d ms%n",
+                count, retained / Math.max(count, 1), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * The task model before Task became immutable: String status/priority/timestamps, and every
+     * setter re-formats updatedAt. Kept only as the baseline.
+     */
+    private static final class MutableTask {
+        final String id;
+        String title;
+        String assignee;
+        String status;
+        String deadline;
+        String priority;
+        String description;
+        String attachedUrl;
+        String weatherNote;
+        String createdAt;
+        String updatedAt;
+
+        MutableTask(String id, String title, String assignee, String deadline, String priority) {
+            this.id = id;
+            this.title = title;
+            this.assignee = assignee;
+            this.status = "pending";
+            this.deadline = deadline;
+            this.priority = priority;
+            this.createdAt = now();
+            this.updatedAt = now();
+            this.description = "";
+            this.attachedUrl = "";
+            this.weatherNote = "";
+        }
+
+        MutableTask(MutableTask other) {
+            this.id = other.id;
+            this.title = other.title;
+            this.assignee = other.assignee;
+            this.status = other.status;
+            this.deadline = other.deadline;
+            this.priority = other.priority;
+            this.description = other.description;
+            this.attachedUrl = other.attachedUrl;
+            this.weatherNote = other.weatherNote;
+            this.createdAt = other.createdAt;
+            this.updatedAt = other.updatedAt;
+        }
+
+        void setStatus(String status) {
+            this.status = status;
+            this.updatedAt = now();
+        }
+
+        void setDescription(String description) {
+            this.description = description;
+            this.updatedAt = now();
+        }
+
+        private static String now() {
+            return LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        }
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+}
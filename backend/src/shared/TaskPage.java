@@ -0,0 +1,22 @@
+package shared;
+
+import java.util.List;
+
+/**
+ * One page of GET_TASKS results. nextCursor is null on the last page.
+ */
+public class TaskPage {
+    private final List<Task> tasks;
+    private final String nextCursor;
+    private final int total;
+
+    public TaskPage(List<Task> tasks, String nextCursor, int total) {
+        this.tasks = tasks;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    public List<Task> getTasks() { return tasks; }
+    public String getNextCursor() { return nextCursor; }
+    public int getTotal() { return total; }
+}
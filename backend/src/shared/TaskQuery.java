@@ -0,0 +1,65 @@
+package shared;
+
+/**
+ * Filter for DataStore.queryTasks(). Null fields are not filtered on.
+ * Deadline bounds are inclusive and compared as ISO date strings.
+ */
+public class TaskQuery {
+    private Task.Status status;
+    private String assignee;
+    private Task.Priority priority;
+    private String deadlineFrom;
+    private String deadlineTo;
+
+    public Task.Status getStatus() { return status; }
+    public String getAssignee() { return assignee; }
+    public Task.Priority getPriority() { return priority; }
+    public String getDeadlineFrom() { return deadlineFrom; }
+    public String getDeadlineTo() { return deadlineTo; }
+
+    // Wire values ("in-progress"); an unknown value throws IllegalArgumentException
+    public TaskQuery status(String status) {
+        this.status = Task.Status.fromString(status);
+        return this;
+    }
+
+    public TaskQuery assignee(String assignee) {
+        this.assignee = assignee;
+        return this;
+    }
+
+    public TaskQuery priority(String priority) {
+        this.priority = Task.Priority.fromString(priority);
+        return this;
+    }
+
+    public TaskQuery deadlineFrom(String deadlineFrom) {
+        this.deadlineFrom = deadlineFrom;
+        return this;
+    }
+
+    public TaskQuery deadlineTo(String deadlineTo) {
+        this.deadlineTo = deadlineTo;
+        return this;
+    }
+
+    public boolean hasDeadlineRange() {
+        return deadlineFrom != null || deadlineTo != null;
+    }
+
+    /**
+     * Full check of a task against every filter in this query.
+     */
+    public boolean matches(Task task) {
+        if (status != null && status != task.getStatus()) return false;
+        if (assignee != null && !assignee.equals(task.getAssignee())) return false;
+        if (priority != null && priority != task.getPriority()) return false;
+        if (hasDeadlineRange()) {
+            String deadline = task.getDeadline();
+            if (deadline == null || deadline.isEmpty()) return false;
+            if (deadlineFrom != null && deadline.compareTo(deadlineFrom) < 0) return false;
+            if (deadlineTo != null && deadline.compareTo(deadlineTo) > 0) return false;
+        }
+        return true;
+    }
+}
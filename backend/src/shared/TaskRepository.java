@@ -0,0 +1,81 @@
+package shared;
+
+import java.util.List;
+
+/**
+ * Storage engine behind DataStore. One implementation is chosen at startup with
+ * -Dnetstream.store.engine:
+ *
+ *   memory - InMemoryTaskRepository, nothing persisted
+ *   wal    - WalTaskRepository, write-ahead log + snapshots (default)
+ *   mmap   - MappedTaskRepository, memory-mapped segment files
+ *
+ * Every stored change bumps the task's own version (Task.getVersion()), which is what
+ * replace() compares against.
+ *
+ * Implementations are thread-safe. Writes return once the change is as durable as the
+ * engine promises; reads are lock-free and weakly consistent.
+ */
+public interface TaskRepository {
+
+    Task get(String id);
+
+    /**
+     * Insert a task, or replace the one with the same id. Returns the stored task,
+     * which carries the new version.
+     */
+    Task put(Task task);
+
+    /**
+     * Replace an existing task. Returns the stored task, or null (and stores nothing)
+     * if the id is unknown.
+     */
+    Task update(Task task);
+
+    /**
+     * Compare-and-swap: store 'task' only if the stored task with its id is still at
+     * 'expectedVersion'. Returns the stored task, or null if the id is unknown; throws
+     * VersionConflictException if the version has moved on.
+     */
+    Task replace(Task task, long expectedVersion);
+
+    /**
+     * Returns the removed task, or null if there was none.
+     */
+    Task delete(String id);
+
+    /**
+     * Apply every operation in the batch in order and persist them together; returns
+     * once the whole batch is as durable as a single write would be. One result per
+     * operation, in the same order.
+     */
+    List<TaskBatch.Result> apply(TaskBatch batch);
+
+    /**
+     * Copy of all tasks, in no particular order.
+     */
+    List<Task> scan();
+
+    /**
+     * One page ordered by 'sortBy'; 'cursor' is the nextCursor of the previous page or null.
+     */
+    TaskPage scan(String sortBy, boolean descending, String cursor, int limit);
+
+    List<Task> query(TaskQuery query);
+
+    /**
+     * Changes after 'sinceVersion', or a full snapshot if they are no longer available.
+     */
+    TaskChangeSet changesSince(long sinceVersion);
+
+    long version();
+
+    int size();
+
+    void clear();
+
+    /**
+     * Flush anything pending and release files. The repository is unusable afterwards.
+     */
+    void close();
+}
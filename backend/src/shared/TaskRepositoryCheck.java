@@ -0,0 +1,277 @@
+package shared;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Conformance and throughput check for the TaskRepository engines. Drives InMemory, Wal and
+ * Mapped through the same sequence (create, get, conditional and batch updates, deletes,
+ * index queries, paged scans in order, change deltas, clear) and compares every result
+ * with a plain map of what the store should hold. The persistent engines are then closed and reopened
+ * on the same files, and must come back with the same tasks. Exits with status 1 on a
+ * mismatch.
+ *
+ *   java shared.TaskRepositoryCheck [taskCount]
+ */
+public class TaskRepositoryCheck {
+    private static final String[] ASSIGNEES = { "alice", "bob", "carol", "dave", "erin" };
+    private static final int CHANGE_LOG_CAPACITY = 1_000_000;
+    private static int failures;
+
+    private interface Engine {
+        TaskRepository open(Path dir) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+        check("memory", count, false, dir -> new InMemoryTaskRepository(CHANGE_LOG_CAPACITY));
+        check("wal", count, true, dir -> new WalTaskRepository(dir, TaskLog.SyncMode.GROUP_COMMIT, 2, 256,
+                TaskSnapshotCodec.Format.BINARY, CHANGE_LOG_CAPACITY));
+        check("mmap", count, true, dir -> new MappedTaskRepository(dir, 4 * 1024 * 1024, 1000, CHANGE_LOG_CAPACITY));
+
+        System.out.println(failures == 0 ? "[Check] All checks passed" : "[Check] " + failures + " check(s) failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void check(String name, int count, boolean persistent, Engine engine) throws IOException {
+        Path dir = Files.createTempDirectory("repository-check-" + name);
+        Map<String, Task> expected = new HashMap<>();
+        TaskRepository repository = engine.open(dir);
+        try {
+            // Create
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Task stored = repository.put(newTask(i));
+                expect(name, "put returns version 1", stored.getVersion() == 1);
+                expected.put(stored.getId(), stored);
+            }
+            report(name, "put", count, start);
+            compare(name, "after create", repository, expected);
+
+            // Conditional updates: every task once, then a stale version must conflict
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Task current = repository.get(id(i));
+                Task stored = repository.replace(current.toBuilder().status(Task.Status.IN_PROGRESS)
+                        .title("Updated " + i).build(), current.getVersion());
+                expect(name, "replace bumps version", stored.getVersion() == current.getVersion() + 1);
+                expected.put(stored.getId(), stored);
+            }
+            report(name, "replace", count, start);
+            try {
+                repository.replace(expected.get(id(0)).toBuilder().title("stale").build(), 1);
+                expect(name, "stale replace throws VersionConflictException", false);
+            } catch (VersionConflictException e) {
+                expect(name, "conflict reports the current version", e.getCurrentVersion() == 2);
+            }
+            expect(name, "update of unknown id returns null", repository.update(newTask(count)) == null);
+            expect(name, "replace of unknown id returns null", repository.replace(newTask(count), 1) == null);
+            compare(name, "after replace", repository, expected);
+
+            // Deletes: every third task
+            long version = repository.version();
+            Set<String> deleted = new HashSet<>();
+            for (int i = 0; i < count; i += 3) {
+                Task removed = repository.delete(id(i));
+                expect(name, "delete returns the removed task", removed != null && removed.getId().equals(id(i)));
+                expected.remove(id(i));
+                deleted.add(id(i));
+            }
+            expect(name, "second delete returns null", repository.delete(id(0)) == null);
+            TaskChangeSet changes = repository.changesSince(version);
+            expect(name, "changesSince is a delta", !changes.isFull());
+            expect(name, "delta lists every delete", changes.getChanges().size() == deleted.size()
+                    && changes.getChanges().stream().allMatch(c -> c.getOp() == TaskChange.Op.DELETED
+                            && deleted.contains(c.getTaskId())));
+            compare(name, "after delete", repository, expected);
+
+            // Batch: complete a few, delete one, create one, one missing id
+            version = repository.version();
+            TaskBatch batch = new TaskBatch()
+                    .update(id(1), DataStore.ANY_VERSION, t -> t.toBuilder().status(Task.Status.COMPLETED).build())
+                    .update(id(2), 1, t -> t.toBuilder().status(Task.Status.COMPLETED).build())
+                    .delete(id(4))
+                    .put(newTask(count + 1))
+                    .delete(id(0));
+            List<TaskBatch.Result> results = repository.apply(batch);
+            expect(name, "batch outcomes", results.size() == 5
+                    && results.get(0).getOutcome() == TaskBatch.Result.Outcome.UPDATED
+                    && results.get(1).getOutcome() == TaskBatch.Result.Outcome.CONFLICT
+                    && results.get(2).getOutcome() == TaskBatch.Result.Outcome.DELETED
+                    && results.get(3).getOutcome() == TaskBatch.Result.Outcome.CREATED
+                    && results.get(4).getOutcome() == TaskBatch.Result.Outcome.NOT_FOUND);
+            expected.put(id(1), results.get(0).getTask());
+            expected.remove(id(4));
+            expected.put(id(count + 1), results.get(3).getTask());
+            expect(name, "batch delta has three changes", repository.changesSince(version).getChanges().size() == 3);
+            compare(name, "after batch", repository, expected);
+
+            if (persistent) {
+                repository.close();
+                repository = engine.open(dir);
+                compare(name, "after restart", repository, expected);
+            }
+
+            // Clear is a delete of everything, visible to delta clients
+            version = repository.version();
+            int size = repository.size();
+            repository.clear();
+            expected.clear();
+            TaskChangeSet cleared = repository.changesSince(version);
+            expect(name, "clear is recorded as deletes", !cleared.isFull() && cleared.getChanges().size() == size);
+            compare(name, "after clear", repository, expected);
+
+            if (persistent) {
+                repository.close();
+                repository = engine.open(dir);
+                compare(name, "after clear and restart", repository, expected);
+            }
+        } finally {
+            repository.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private static String id(int i) {
+        return "task_" + i;
+    }
+
+    private static Task newTask(int i) {
+        return Task.builder(id(i))
+                .title("Task " + i)
+                .assignee(ASSIGNEES[i % ASSIGNEES.length])
+                .deadline(String.format("2025-%02d-%02d", 1 + i % 12, 1 + i % 28))
+                .priority(Task.Priority.values()[i % Task.Priority.values().length])
+                .description("Generated task " + i)
+                .build();
+    }
+
+    /**
+     * Everything a client can observe: get, size, scan, each index query and a full walk of
+     * every sort order.
+     */
+    private static void compare(String name, String stage, TaskRepository repository, Map<String, Task> expected) {
+        String at = stage + ": ";
+        expect(name, at + "size", repository.size() == expected.size());
+        boolean same = true;
+        for (Task task : expected.values()) {
+            same &= describe(task).equals(describe(repository.get(task.getId())));
+        }
+        expect(name, at + "get matches every task", same);
+        expect(name, at + "scan", ids(repository.scan()).equals(expected.keySet()));
+
+        for (Task.Status status : Task.Status.values()) {
+            queryMatches(name, at + "status " + status, repository, expected,
+                    new TaskQuery().status(status.getWireName()));
+        }
+        for (String assignee : ASSIGNEES) {
+            queryMatches(name, at + "assignee " + assignee, repository, expected, new TaskQuery().assignee(assignee));
+        }
+        for (Task.Priority priority : Task.Priority.values()) {
+            queryMatches(name, at + "priority " + priority, repository, expected,
+                    new TaskQuery().priority(priority.getWireName()).deadlineFrom("2025-03-01").deadlineTo("2025-06-30"));
+        }
+
+        for (String sortBy : new String[] { "createdAt", "updatedAt", "deadline", "priority" }) {
+            for (boolean descending : new boolean[] { false, true }) {
+                List<Task> walked = new ArrayList<>();
+                String cursor = null;
+                do {
+                    TaskPage page = repository.scan(sortBy, descending, cursor, 97);
+                    walked.addAll(page.getTasks());
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
+                expect(name, at + "pages by " + sortBy + (descending ? " desc" : ""),
+                        walked.size() == expected.size() && order(walked).equals(order(expected.values(), sortBy, descending)));
+            }
+        }
+    }
+
+    private static void queryMatches(String name, String what, TaskRepository repository,
+                                     Map<String, Task> expected, TaskQuery query) {
+        Set<String> want = new HashSet<>();
+        for (Task task : expected.values()) {
+            if (query.matches(task)) {
+                want.add(task.getId());
+            }
+        }
+        expect(name, what, ids(repository.query(query)).equals(want));
+    }
+
+    private static List<String> order(List<Task> tasks) {
+        List<String> ids = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    // Ids in the order every engine must page them: by sort key value, then id
+    private static List<String> order(Collection<Task> tasks, String sortBy, boolean descending) {
+        List<TaskIndex.SortKey> keys = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            String value;
+            switch (TaskIndex.SortField.fromString(sortBy)) {
+                case CREATED_AT: value = TaskIndex.SortKey.sortableMillis(task.getCreatedAt()); break;
+                case UPDATED_AT: value = TaskIndex.SortKey.sortableMillis(task.getUpdatedAt()); break;
+                case PRIORITY: value = TaskIndex.SortKey.priorityRank(task.getPriority()); break;
+                default: value = task.getDeadline(); break;
+            }
+            keys.add(new TaskIndex.SortKey(value, task.getId()));
+        }
+        keys.sort(descending ? Comparator.reverseOrder() : Comparator.naturalOrder());
+        List<String> ids = new ArrayList<>(keys.size());
+        for (TaskIndex.SortKey key : keys) {
+            ids.add(key.getId());
+        }
+        return ids;
+    }
+
+    private static Set<String> ids(List<Task> tasks) {
+        Set<String> ids = new HashSet<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+
+    private static String describe(Task task) {
+        if (task == null) {
+            return "null";
+        }
+        return task.getId() + "|" + task.getTitle() + "|" + task.getAssignee() + "|" + task.getStatus() + "|"
+                + task.getDeadline() + "|" + task.getPriority() + "|" + task.getDescription() + "|"
+                + task.getCreatedAt() + "|" + task.getUpdatedAt() + "|" + task.getVersion();
+    }
+
+    private static void expect(String name, String what, boolean ok) {
+        if (!ok) {
+            failures++;
+            System.out.println("[Check] FAIL " + name + ": " + what);
+        }
+    }
+
+    private static void report(String name, String op, int count, long start) {
+        long micros = Math.max(1, (System.nanoTime() - start) / 1000);
+        System.out.printf("[Check] %-6s %-7s %,d tasks  %,d ops/s%n", name, op, count, count * 1_000_000L / micros);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package shared;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes task snapshots in two formats:
+ *
+ *   JSON   - the original pretty-printed array (data/tasks.json)
+ *   BINARY - compact, versioned, length-prefixed records (data/tasks.bin):
+ *            "NSTS" | format version (1 byte) | task count (8 bytes)
+ *            then per task: varint record length | record
+ *            then a zero record length as end marker.
+ *            Record (format 2): id, title, assignee | status byte | deadline | priority byte |
+ *            description, attachedUrl, weatherNote | varint createdAt, updatedAt (epoch millis) |
+ *            varint task version. Enum bytes are ordinal + 1, 0 meaning null.
+ *            Format 1 records (still readable) hold 11 strings, timestamps and enums as text.
+ *            Strings are varint (byte length + 1) followed by UTF-8; 0 means null.
+ *
+ * Both loaders stream: each task is handed to the consumer as soon as it is decoded,
+ * so startup never holds a second full copy of the data set.
+ *
+ * Command line:
+ *   java shared.TaskSnapshotCodec convert data/tasks.json data/tasks.bin
+ *   java shared.TaskSnapshotCodec convert data/tasks.bin data/tasks.json
+ *   java shared.TaskSnapshotCodec bench 1000000
+ */
+public class TaskSnapshotCodec {
+    public enum Format {
+        JSON, BINARY;
+
+        public static Format fromString(String value) {
+            return Format.valueOf(value.trim().toUpperCase());
+        }
+
+        public static Format fromPath(Path path) {
+            return path.getFileName().toString().endsWith(".bin") ? BINARY : JSON;
+        }
+    }
+
+    private static final byte[] MAGIC = { 'N', 'S', 'T', 'S' };
+    private static final int FORMAT_VERSION = 2;
+    private static final int LEGACY_FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private TaskSnapshotCodec() {}
+
+    public static void write(Path path, Collection<Task> tasks, Format format) throws IOException {
+        if (format == Format.BINARY) {
+            writeBinary(path, tasks);
+        } else {
+            writeJson(path, tasks);
+        }
+    }
+
+    public static long read(Path path, Format format, Consumer<Task> consumer) throws IOException {
+        return format == Format.BINARY ? readBinary(path, consumer) : readJson(path, consumer);
+    }
+
+    // ---- JSON ----
+
+    public static void writeJson(Path path, Collection<Task> tasks) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            gson.toJson(tasks, new TypeToken<Collection<Task>>(){}.getType(), writer);
+        }
+    }
+
+    public static long readJson(Path path, Consumer<Task> consumer) throws IOException {
+        long count = 0;
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+             JsonReader reader = new JsonReader(in)) {
+            if (reader.peek() == JsonToken.NULL) {
+                return 0;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Task task;
+                try {
+                    task = gson.fromJson(reader, Task.class);
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid task record " + (count + 1) + " in " + path + ": " + e.getMessage(), e);
+                }
+                if (task != null) {
+                    consumer.accept(task);
+                    count++;
+                }
+            }
+            reader.endArray();
+        }
+        return count;
+    }
+
+    // ---- Binary ----
+
+    public static void writeBinary(Path path, Collection<Task> tasks) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(tasks.size());
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            for (Task task : tasks) {
+                record.reset();
+                writeFields(record, task);
+                writeVarInt(out, record.size());
+                record.writeTo(out);
+            }
+            writeVarInt(out, 0);
+        }
+    }
+
+    public static long readBinary(Path path, Consumer<Task> consumer) throws IOException {
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a task snapshot: " + path);
+                }
+            }
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION && version != LEGACY_FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + path);
+            }
+            boolean legacy = version == LEGACY_FORMAT_VERSION;
+            in.readLong(); // task count, informational
+
+            byte[] record = new byte[256];
+            while (true) {
+                int length;
+                try {
+                    length = readVarInt(in);
+                } catch (EOFException e) {
+                    throw new IOException("Truncated snapshot (missing end marker): " + path);
+                }
+                if (length == 0) {
+                    break;
+                }
+                if (record.length < length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                in.readFully(record, 0, length);
+
+                // Fields beyond the ones known here (newer writers) are skipped via the record length
+                Task task;
+                try {
+                    task = legacy ? decodeLegacyRecord(record, 0, length) : decodeRecord(record, 0, length);
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid task record " + (count + 1) + " in " + path + ": " + e.getMessage(), e);
+                }
+                consumer.accept(task);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // ---- Record encoding, shared with MappedTaskStore and the binary TCP protocol ----
+
+    /**
+     * Encode one task as the binary record body (no length prefix).
+     */
+    static byte[] encodeRecord(Task task) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        try {
+            writeFields(record, task);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // ByteArrayOutputStream does not throw
+        }
+        return record.toByteArray();
+    }
+
+    static Task decodeRecord(byte[] record, int offset, int length) {
+        return decodeRecord(record, new int[] { offset });
+    }
+
+    private static Task decodeRecord(byte[] record, int[] pos) {
+        return Task.restore()
+                .id(readString(record, pos))
+                .title(readString(record, pos))
+                .assignee(readString(record, pos))
+                .status(readEnum(Task.Status.values(), record, pos))
+                .deadline(readString(record, pos))
+                .priority(readEnum(Task.Priority.values(), record, pos))
+                .description(readString(record, pos))
+                .attachedUrl(readString(record, pos))
+                .weatherNote(readString(record, pos))
+                .createdAt(readVarLong(record, pos))
+                .updatedAt(readVarLong(record, pos))
+                .version(readVarLong(record, pos))
+                .build();
+    }
+
+    /**
+     * Format 1 record: every field as a string, optionally followed by the task version.
+     */
+    static Task decodeLegacyRecord(byte[] record, int offset, int length) {
+        int[] pos = { offset };
+        String id = readString(record, pos);
+        Task.Builder b = Task.restore()
+                .id(id)
+                .title(readString(record, pos))
+                .assignee(readString(record, pos))
+                .status(Task.readStatus(id, readString(record, pos)))
+                .deadline(readString(record, pos))
+                .priority(Task.readPriority(id, readString(record, pos)))
+                .description(readString(record, pos))
+                .attachedUrl(readString(record, pos))
+                .weatherNote(readString(record, pos))
+                .createdAt(Task.parseTimestamp(readString(record, pos)))
+                .updatedAt(Task.parseTimestamp(readString(record, pos)));
+        // Records written before tasks were versioned end after the strings
+        if (pos[0] < offset + length) {
+            b.version(readVarLong(record, pos));
+        }
+        return b.build();
+    }
+
+    /**
+     * Only the id (first field) of an encoded record, without building a Task.
+     */
+    static String decodeRecordId(byte[] record, int offset) {
+        return readString(record, new int[] { offset });
+    }
+
+    /**
+     * Hand the fields CompactTaskIndex keeps from a format 2 record to 'index', skipping the
+     * text fields, without building a Task. 'id' is the caller's copy of the record id.
+     */
+    static void indexRecord(byte[] record, int offset, String id, CompactTaskIndex index) {
+        int[] pos = { offset };
+        skipString(record, pos); // id
+        skipString(record, pos); // title
+        String assignee = readString(record, pos);
+        Task.Status status = readEnum(Task.Status.values(), record, pos);
+        String deadline = readString(record, pos);
+        Task.Priority priority = readEnum(Task.Priority.values(), record, pos);
+        skipString(record, pos); // description
+        skipString(record, pos); // attachedUrl
+        skipString(record, pos); // weatherNote
+        long createdAt = readVarLong(record, pos);
+        long updatedAt = readVarLong(record, pos);
+        index.add(id, status, assignee, priority, deadline, createdAt, updatedAt);
+    }
+
+    /**
+     * Write the record body of 'task' (same bytes as encodeRecord) to 'out'.
+     */
+    public static void writeTask(OutputStream out, Task task) throws IOException {
+        writeFields(out, task);
+    }
+
+    /**
+     * Decode a record body written by writeTask, advancing pos[0] past it.
+     */
+    public static Task readTask(byte[] buf, int[] pos) {
+        return decodeRecord(buf, pos);
+    }
+
+    private static void writeFields(OutputStream record, Task task) throws IOException {
+        writeString(record, task.getId());
+        writeString(record, task.getTitle());
+        writeString(record, task.getAssignee());
+        writeEnum(record, task.getStatus());
+        writeString(record, task.getDeadline());
+        writeEnum(record, task.getPriority());
+        writeString(record, task.getDescription());
+        writeString(record, task.getAttachedUrl());
+        writeString(record, task.getWeatherNote());
+        writeVarLong(record, task.getCreatedAt());
+        writeVarLong(record, task.getUpdatedAt());
+        writeVarLong(record, task.getVersion());
+    }
+
+    public static void writeString(OutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeEnum(OutputStream out, Enum<?> value) throws IOException {
+        out.write(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private static <E extends Enum<E>> E readEnum(E[] values, byte[] buf, int[] pos) {
+        int b = buf[pos[0]++] & 0xFF;
+        return b == 0 ? null : values[b - 1];
+    }
+
+    public static String readString(byte[] buf, int[] pos) {
+        int length = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buf[pos[0]++] & 0xFF;
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        if (length == 0) {
+            return null;
+        }
+        String value = new String(buf, pos[0], length - 1, StandardCharsets.UTF_8);
+        pos[0] += length - 1;
+        return value;
+    }
+
+    private static void skipString(byte[] buf, int[] pos) {
+        long length = readVarLong(buf, pos);
+        if (length > 0) {
+            pos[0] += (int) (length - 1);
+        }
+    }
+
+    public static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static long readVarLong(byte[] buf, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buf[pos[0]++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    // ---- Command line: converter and load benchmark ----
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && "convert".equals(args[0])) {
+            convert(Paths.get(args[1]), Paths.get(args[2]));
+        } else if (args.length >= 1 && "bench".equals(args[0])) {
+            bench(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+        } else {
+            System.out.println("Usage: TaskSnapshotCodec convert <in.json|in.bin> <out.json|out.bin>");
+            System.out.println("       TaskSnapshotCodec bench [taskCount]");
+        }
+    }
+
+    private static void convert(Path in, Path out) throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+        read(in, Format.fromPath(in), tasks::add);
+        write(out, tasks, Format.fromPath(out));
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("[Snapshot] Converted " + tasks.size() + " tasks: " + in + " (" + Files.size(in)
+                + " bytes) -> " + out + " (" + Files.size(out) + " bytes) in " + ms + " ms");
+    }
+
+    /**
+     * Writes 'count' synthetic tasks in both formats, then loads each into a fresh map the way
+     * DataStore does at startup and reports file size, load time, peak heap during the load and
+     * heap retained per loaded task. Finally times a status change on every task.
+     * Run with a fixed heap (e.g. -Xmx4g) for comparable peaks.
+     */
+    private static void bench(int count) throws IOException {
+        Path dir = Files.createTempDirectory("snapshot-bench");
+        Path json = dir.resolve("tasks.json");
+        Path bin = dir.resolve("tasks.bin");
+
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(Task.builder("task_" + i)
+                    .title("Task number " + i)
+                    .assignee("member" + (i % 50))
+                    .deadline("2025-11-" + (10 + i % 20))
+                    .priority(i % 3 == 0 ? Task.Priority.HIGH : Task.Priority.MEDIUM)
+                    .description("Generated task " + i)
+                    .build());
+        }
+        writeJson(json, tasks);
+        writeBinary(bin, tasks);
+        tasks = null;
+
+        for (Format format : Format.values()) {
+            Path path = format == Format.BINARY ? bin : json;
+            Map<String, Task> target = new ConcurrentHashMap<>();
+            System.gc();
+            long baseline = usedHeap();
+            resetPeaks();
+
+            long start = System.nanoTime();
+            long loaded = read(path, format, t -> target.put(t.getId(), t));
+            long ms = (System.nanoTime() - start) / 1_000_000;
+
+            long peak = peakHeap() - baseline;
+            System.gc();
+            long retained = usedHeap() - baseline;
+
+            System.out.printf("[Snapshot] %-6s %,d tasks  file %,d bytes  load %,d ms  peak heap +%,d MB  retained %,d bytes/task%n",
+                    format, loaded, Files.size(path), ms, peak / (1024 * 1024), retained / Math.max(loaded, 1));
+
+            if (format == Format.BINARY) {
+                start = System.nanoTime();
+                long now = System.currentTimeMillis();
+                for (Task task : target.values()) {
+                    target.put(task.getId(), task.toBuilder().status(Task.Status.COMPLETED).updatedAt(now).build());
+                }
+                System.out.printf("[Snapshot] update %,d tasks (copy-on-write)  %,d ms%n",
+                        target.size(), (System.nanoTime() - start) / 1_000_000);
+            }
+            target.clear();
+        }
+
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(bin);
+        Files.deleteIfExists(dir);
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package shared;
+
+/**
+ * Thrown when a conditional update finds the task at a different version than the caller
+ * expected, i.e. someone else changed it in between. Re-read the task and retry.
+ */
+public class VersionConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String taskId;
+    private final long expectedVersion;
+    private final long currentVersion;
+
+    public VersionConflictException(String taskId, long expectedVersion, long currentVersion) {
+        super("Version conflict on " + taskId + ": expected version " + expectedVersion
+                + " but current version is " + currentVersion);
+        this.taskId = taskId;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    public String getTaskId() { return taskId; }
+    public long getExpectedVersion() { return expectedVersion; }
+    public long getCurrentVersion() { return currentVersion; }
+}
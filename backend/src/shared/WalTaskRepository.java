@@ -0,0 +1,204 @@
+package shared;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory tasks made durable by a write-ahead log (tasks.log) that is periodically
+ * folded into a snapshot (tasks.json or tasks.bin) by a background compaction.
+ * Startup loads the newest snapshot and replays the log on top of it.
+ */
+public class WalTaskRepository extends InMemoryTaskRepository {
+    private static final int COMPACT_THRESHOLD = 1000; // log records before a new snapshot is written
+
+    private final Path tasksFile;
+    private final Path tasksBinaryFile;
+    private final Path tasksLog;
+    private final Path tasksLogCompacting;
+
+    private final TaskLog.SyncMode syncMode;
+    private final TaskLog taskLog;
+    private final TaskSnapshotCodec.Format snapshotFormat;
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    public WalTaskRepository(Path dataDir, TaskLog.SyncMode syncMode, long commitWindowMs, int maxBatch,
+                             TaskSnapshotCodec.Format snapshotFormat, int changeLogCapacity) {
+        super(changeLogCapacity);
+        this.tasksFile = dataDir.resolve("tasks.json");
+        this.tasksBinaryFile = dataDir.resolve("tasks.bin");
+        this.tasksLog = dataDir.resolve("tasks.log");
+        this.tasksLogCompacting = dataDir.resolve("tasks.log.compacting");
+        this.syncMode = syncMode;
+        this.taskLog = new TaskLog(tasksLog, syncMode, commitWindowMs, maxBatch);
+        this.snapshotFormat = snapshotFormat;
+        load();
+    }
+
+    @Override
+    protected CompletableFuture<Void> persistPut(Task task) {
+        return taskLog.appendPut(task);
+    }
+
+    @Override
+    protected CompletableFuture<Void> persistDelete(String id) {
+        return taskLog.appendDelete(id);
+    }
+
+    @Override
+    protected CompletableFuture<Void> persistBatch(List<TaskChange> changes) {
+        return taskLog.appendBatch(changes);
+    }
+
+    /**
+     * Durability acknowledgement: block until the mutation's log record is fsync'd,
+     * unless the log runs in async mode. Also the point where compaction is triggered.
+     * A failed write or fsync is rethrown, so the request is answered with an error
+     * instead of a success the log cannot back (the change stays applied in memory).
+     */
+    @Override
+    protected void awaitDurable(CompletableFuture<Void> committed, String id) {
+        if (syncMode != TaskLog.SyncMode.ASYNC) {
+            try {
+                committed.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                System.err.println("[ERROR] Failed to persist " + id + ": " + cause.getMessage());
+                throw new IllegalStateException("Failed to persist " + id + ": " + cause.getMessage(), cause);
+            }
+        }
+        maybeCompact();
+    }
+
+    @Override
+    public void close() {
+        try {
+            taskLog.close();
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to close task log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start a background compaction once the log has grown past COMPACT_THRESHOLD records.
+     */
+    private void maybeCompact() {
+        if (taskLog.getRecordCount() < COMPACT_THRESHOLD || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread compactor = new Thread(() -> {
+            try {
+                compact();
+            } finally {
+                compacting.set(false);
+            }
+        }, "DataStore-Compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    /**
+     * Fold the log into a fresh snapshot.
+     * Under the write lock we only copy the task list and rotate the log file; the slow
+     * snapshot write happens outside it. Until the snapshot is in place the rotated log
+     * is kept, so a crash at any point still replays to the same state.
+     * If an earlier snapshot write failed, its rotated log is still on disk and holds
+     * records no snapshot has; this round then only retries the snapshot and leaves the
+     * live log in place, so the next rotation has nothing to overwrite.
+     */
+    private void compact() {
+        List<Task> taskList;
+        try {
+            synchronized (writeLock) {
+                taskList = new ArrayList<>(tasks.values());
+                if (!Files.exists(tasksLogCompacting)) {
+                    taskLog.rotate(tasksLogCompacting);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to rotate task log: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+
+        if (saveTasks(taskList)) {
+            try {
+                Files.deleteIfExists(tasksLogCompacting);
+                System.out.println("[DataStore] Compacted task log into snapshot (" + taskList.size() + " tasks)");
+            } catch (IOException e) {
+                System.err.println("[ERROR] Failed to remove compacted log: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean saveTasks(List<Task> taskList) {
+        Path target = snapshotFormat == TaskSnapshotCodec.Format.BINARY ? tasksBinaryFile : tasksFile;
+        Path other = target == tasksFile ? tasksBinaryFile : tasksFile;
+        try {
+            // Create data directory if it doesn't exist
+            Files.createDirectories(target.getParent());
+
+            // Write to a temp file and swap it in so a crash never leaves a half-written snapshot
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            TaskSnapshotCodec.write(tmp, taskList, snapshotFormat);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // A snapshot in the other format is now stale (format was switched)
+            Files.deleteIfExists(other);
+            System.out.println("[DataStore] Tasks persisted to " + target.toAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            System.err.println("[ERROR] Failed to save tasks: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Newest of tasks.json / tasks.bin; both exist only if a format switch was interrupted
+    private Path latestSnapshot() throws IOException {
+        boolean json = Files.exists(tasksFile);
+        boolean binary = Files.exists(tasksBinaryFile);
+        if (json && binary) {
+            return Files.getLastModifiedTime(tasksBinaryFile).compareTo(Files.getLastModifiedTime(tasksFile)) >= 0
+                    ? tasksBinaryFile : tasksFile;
+        }
+        return binary ? tasksBinaryFile : json ? tasksFile : null;
+    }
+
+    private void load() {
+        try {
+            Path snapshot = latestSnapshot();
+            if (snapshot != null) {
+                // Stream tasks straight into the map; no intermediate list of the whole data set
+                long start = System.currentTimeMillis();
+                long loaded = TaskSnapshotCodec.read(snapshot, TaskSnapshotCodec.Format.fromPath(snapshot),
+                        task -> tasks.put(task.getId(), task));
+                System.out.println("[DataStore] Loaded " + loaded + " tasks from " + snapshot.toAbsolutePath()
+                        + " in " + (System.currentTimeMillis() - start) + " ms");
+            } else {
+                System.out.println("[DataStore] No existing tasks file found, starting fresh");
+            }
+
+            // Replay the log tail on top of the snapshot (a rotated log first, if compaction was interrupted)
+            long replayed = new TaskLog(tasksLogCompacting).replay(tasks);
+            replayed += taskLog.replay(tasks);
+            if (replayed > 0) {
+                System.out.println("[DataStore] Replayed " + replayed + " log records from " + tasksLog.toAbsolutePath());
+            }
+            // Finish an interrupted compaction now, before a later rotation could overwrite its log
+            if (Files.exists(tasksLogCompacting) && saveTasks(new ArrayList<>(tasks.values()))) {
+                Files.delete(tasksLogCompacting);
+            }
+            taskLog.open();
+            index.rebuild(tasks.values());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[ERROR] Failed to load tasks: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
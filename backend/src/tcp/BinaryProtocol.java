@@ -0,0 +1,230 @@
+package tcp;
+
+import shared.DataStore;
+import shared.Task;
+import shared.TaskSnapshotCodec;
+import shared.VersionConflictException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compact binary alternative to the JSON line protocol on the same port. A client opts in
+ * by sending HANDSHAKE as its first four bytes; the server echoes them and from then on
+ * both sides exchange length-prefixed frames:
+ *
+ *   request   int32 length | opcode byte | int32 requestId | payload
+ *   response  int32 length | status byte | int32 requestId | payload
+ *
+ * (length counts the bytes after itself; ints are big-endian). Strings and numbers use the
+ * varint encoding of TaskSnapshotCodec, and tasks travel as its record body, so a task is
+ * about a third of its JSON size and needs no parsing beyond the varints.
+ *
+ * Request payloads:
+ *   CREATE    fields
+ *   GET       string taskId
+ *   UPDATE    string taskId | varlong expectedVersion + 1 (0 = any version) | fields
+ *   DELETE    string taskId
+ *   GET_TASKS (empty)
+ *   JSON      string request, any action of the line protocol
+ * where fields = count byte, then count x (field byte, string) with the numbers of TaskFields.
+ *
+ * Response payloads:
+ *   OK        string taskId for CREATE, task record for GET/UPDATE/DELETE (DELETE: the
+ *             removed task), varint count + records for GET_TASKS, string response for JSON
+ *   ERROR     string message
+ *   CONFLICT  varlong currentVersion | string message
+ *
+ * Frames are answered in the order they arrive; the requestId is echoed for the client's
+ * bookkeeping.
+ */
+public final class BinaryProtocol {
+    public static final byte[] HANDSHAKE = { (byte) 0xB1, 'N', 'S', 1 };
+
+    public static final byte CREATE = 0x01;
+    public static final byte GET = 0x02;
+    public static final byte UPDATE = 0x03;
+    public static final byte DELETE = 0x04;
+    public static final byte GET_TASKS = 0x05;
+    public static final byte JSON = 0x7F;
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+    public static final byte CONFLICT = 2;
+
+    // Largest frame accepted, same limit as a JSON request line
+    public static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    private BinaryProtocol() {}
+
+    /**
+     * Run one request frame (opcode onwards, without the length prefix) and return the
+     * complete response frame, length prefix included.
+     */
+    static byte[] handle(byte[] frame, TaskRequestProcessor processor) {
+        int requestId = requestIdOf(frame);
+        if (frame.length < 5) {
+            return errorFrame(requestId, "Malformed frame");
+        }
+        try {
+            int[] pos = { 5 };
+            Frame response = new Frame(OK, requestId);
+            switch (frame[0]) {
+                case CREATE: {
+                    Task task = processor.createTask(readFields(frame, pos));
+                    TaskSnapshotCodec.writeString(response, task.getId());
+                    break;
+                }
+                case GET: {
+                    String taskId = TaskSnapshotCodec.readString(frame, pos);
+                    Task task = DataStore.getTask(taskId);
+                    if (task == null) {
+                        return errorFrame(requestId, "Task not found: " + taskId);
+                    }
+                    TaskSnapshotCodec.writeTask(response, task);
+                    break;
+                }
+                case UPDATE: {
+                    String taskId = TaskSnapshotCodec.readString(frame, pos);
+                    long expectedVersion = TaskSnapshotCodec.readVarLong(frame, pos) - 1;
+                    Task task = processor.updateTask(taskId, expectedVersion, readFields(frame, pos));
+                    if (task == null) {
+                        return errorFrame(requestId, "Task not found: " + taskId);
+                    }
+                    TaskSnapshotCodec.writeTask(response, task);
+                    break;
+                }
+                case DELETE: {
+                    String taskId = TaskSnapshotCodec.readString(frame, pos);
+                    Task task = DataStore.getTask(taskId);
+                    if (task == null || !processor.deleteTask(taskId)) {
+                        return errorFrame(requestId, "Task not found: " + taskId);
+                    }
+                    TaskSnapshotCodec.writeTask(response, task);
+                    break;
+                }
+                case GET_TASKS: {
+                    List<Task> tasks = DataStore.getAllTasks();
+                    TaskSnapshotCodec.writeVarInt(response, tasks.size());
+                    for (Task task : tasks) {
+                        TaskSnapshotCodec.writeTask(response, task);
+                    }
+                    break;
+                }
+                case JSON: {
+                    TaskRequest request = processor.parse(TaskSnapshotCodec.readString(frame, pos));
+                    // Already holding a DataStore permit
+                    TaskSnapshotCodec.writeString(response, processor.dispatch(request));
+                    break;
+                }
+                default:
+                    return errorFrame(requestId, "Unknown opcode: " + frame[0]);
+            }
+            return response.toFrame();
+
+        } catch (VersionConflictException e) {
+            Frame response = new Frame(CONFLICT, requestId);
+            try {
+                TaskSnapshotCodec.writeVarLong(response, e.getCurrentVersion());
+                TaskSnapshotCodec.writeString(response, e.getMessage());
+            } catch (IOException ignored) {
+                // ByteArrayOutputStream does not throw
+            }
+            return response.toFrame();
+        } catch (IndexOutOfBoundsException e) {
+            return errorFrame(requestId, "Malformed frame");
+        } catch (Exception e) {
+            return errorFrame(requestId, e.getMessage());
+        }
+    }
+
+    /**
+     * The JSON action a frame corresponds to (for rate limits), or "JSON" for the passthrough.
+     */
+    static String actionOf(byte[] frame) {
+        if (frame.length == 0) {
+            return null;
+        }
+        switch (frame[0]) {
+            case CREATE: return "CREATE_TASK";
+            case GET: return "GET_TASK";
+            case UPDATE: return "UPDATE_TASK";
+            case DELETE: return "DELETE_TASK";
+            case GET_TASKS: return "GET_TASKS";
+            case JSON: return "JSON";
+            default: return null;
+        }
+    }
+
+    static int requestIdOf(byte[] frame) {
+        return frame.length < 5 ? 0 : readInt(frame, 1);
+    }
+
+    static byte[] errorFrame(int requestId, String message) {
+        Frame response = new Frame(ERROR, requestId);
+        try {
+            TaskSnapshotCodec.writeString(response, message);
+        } catch (IOException ignored) {
+            // ByteArrayOutputStream does not throw
+        }
+        return response.toFrame();
+    }
+
+    private static TaskFields readFields(byte[] frame, int[] pos) {
+        TaskFields fields = new TaskFields();
+        int count = frame[pos[0]++] & 0xFF;
+        for (int i = 0; i < count; i++) {
+            int field = frame[pos[0]++] & 0xFF;
+            fields.set(field, TaskSnapshotCodec.readString(frame, pos));
+        }
+        return fields;
+    }
+
+    // ---- Client side, used by ProtocolBenchmark ----
+
+    /**
+     * Start a request frame; write the payload into the returned stream, then call toFrame().
+     */
+    public static Frame request(byte opcode, int requestId) {
+        return new Frame(opcode, requestId);
+    }
+
+    /**
+     * Append a fields block: alternating field numbers and values, e.g. (TITLE, "Fix bug").
+     */
+    public static void writeFields(ByteArrayOutputStream out, Object... fieldsAndValues) throws IOException {
+        out.write(fieldsAndValues.length / 2);
+        for (int i = 0; i < fieldsAndValues.length; i += 2) {
+            out.write((Integer) fieldsAndValues[i]);
+            TaskSnapshotCodec.writeString(out, (String) fieldsAndValues[i + 1]);
+        }
+    }
+
+    public static int readInt(byte[] buf, int offset) {
+        return ((buf[offset] & 0xFF) << 24) | ((buf[offset + 1] & 0xFF) << 16)
+                | ((buf[offset + 2] & 0xFF) << 8) | (buf[offset + 3] & 0xFF);
+    }
+
+    /**
+     * A frame being built: the length prefix and header are reserved up front and the
+     * length is filled in by toFrame(), so header and payload need no second buffer.
+     */
+    public static final class Frame extends ByteArrayOutputStream {
+        private Frame(byte type, int requestId) {
+            super(64);
+            write(0); write(0); write(0); write(0);
+            write(type);
+            write(requestId >>> 24); write(requestId >>> 16); write(requestId >>> 8); write(requestId);
+        }
+
+        public byte[] toFrame() {
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return toByteArray();
+        }
+    }
+}
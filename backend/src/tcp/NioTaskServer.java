@@ -0,0 +1,569 @@
+package tcp;
+
+import com.google.gson.JsonElement;
+import shared.JsonUtils;
+import shared.MetricsRegistry;
+import threading.ExceptionHandler;
+import threading.ThreadPoolManager;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking engine for the task protocol (-Dnetstream.tcp.engine=nio).
+ *
+ * One thread accepts connections and hands them round-robin to SELECTOR_THREADS selector
+ * loops. A selector loop does all socket I/O for its connections: it reads into a
+ * per-connection buffer, splits lines itself and writes queued responses. Requests are
+ * processed on the shared worker pool, so an idle connection costs a few KB of buffers
+ * and no thread.
+ *
+ * Protocol behaviour matches TCPTaskServer: persistent connections, blank lines ignored,
+ * untagged requests answered in order, requests with a requestId pipelined. Connections
+ * that open with the BinaryProtocol handshake exchange frames instead, answered in order.
+ */
+public class NioTaskServer implements TaskServer {
+    private static final int MAX_CONNECTIONS = Integer.getInteger("netstream.tcp.maxConnections", 50000);
+    private static final int SELECTOR_THREADS = Integer.getInteger("netstream.tcp.selectorThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_LINE_BYTES = 1024 * 1024;
+    private static final long IDLE_CHECK_MS = 1000;
+
+    private final int port;
+    private final TaskRequestProcessor processor = new TaskRequestProcessor();
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private SelectorLoop[] loops;
+    private ExecutorService workerPool;
+    private volatile boolean running = false;
+
+    public NioTaskServer(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void start() {
+        try {
+            workerPool = ThreadPoolManager.getThreadPool();
+            acceptSelector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+            running = true;
+
+            loops = new SelectorLoop[SELECTOR_THREADS];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new SelectorLoop();
+                Thread t = new Thread(loops[i], "TCP-Selector-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+
+            System.out.println("[INFO] TCP Server (nio) started on port " + port
+                    + " with " + SELECTOR_THREADS + " selector thread(s)");
+            System.out.println("[INFO] Listening for client connections...");
+
+            int next = 0;
+            while (running) {
+                acceptSelector.select(1000);
+                acceptSelector.selectedKeys().clear();
+                SocketChannel channel;
+                while ((channel = serverChannel.accept()) != null) {
+                    MetricsRegistry.tcpConnections.incrementAndGet();
+                    if (MetricsRegistry.tcpActiveConnections.incrementAndGet() > MAX_CONNECTIONS) {
+                        refuse(channel);
+                        continue;
+                    }
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    loops[next++ % loops.length].register(channel);
+                }
+            }
+
+        } catch (IOException | ClosedSelectorException e) {
+            // stop() closes the selector, possibly while select() is running
+            if (running) {
+                ExceptionHandler.handle(e, "TCP Server (nio) startup");
+            } else {
+                System.out.println("[DEBUG] TCP Server accept interrupted during shutdown: " + e.getMessage());
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    private void refuse(SocketChannel channel) {
+        try (SocketChannel c = channel) {
+            // Still in blocking mode; a short line fits in the socket buffer
+            c.write(ByteBuffer.wrap((JsonUtils.createErrorResponse("Too many connections") + "\n")
+                    .getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // Client is gone already
+        } finally {
+            MetricsRegistry.tcpActiveConnections.decrementAndGet();
+        }
+    }
+
+    @Override
+    public TaskRequestProcessor processor() {
+        return processor;
+    }
+
+    @Override
+    public void stop() {
+        boolean wasRunning = running;
+        running = false;
+        try {
+            if (serverChannel != null && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+            if (acceptSelector != null && acceptSelector.isOpen()) {
+                acceptSelector.close();
+            }
+        } catch (IOException e) {
+            ExceptionHandler.handle(e, "Stopping TCP server");
+        }
+        if (loops != null) {
+            for (SelectorLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+        }
+        if (wasRunning) {
+            ThreadPoolManager.shutdown();
+            System.out.println("[INFO] TCP Server stopped");
+        }
+    }
+
+    /**
+     * One selector thread and the connections registered with it. Other threads only talk
+     * to it through the two queues plus wakeup().
+     */
+    private final class SelectorLoop implements Runnable {
+        final Selector selector;
+        final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+        SelectorLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pendingRegistrations.add(channel);
+            selector.wakeup();
+        }
+
+        void requestFlush(Connection connection) {
+            pendingWrites.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastIdleCheck = System.currentTimeMillis();
+            try {
+                while (running) {
+                    selector.select(IDLE_CHECK_MS);
+
+                    SocketChannel channel;
+                    while ((channel = pendingRegistrations.poll()) != null) {
+                        try {
+                            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                            key.attach(new Connection(this, channel, key));
+                        } catch (IOException e) {
+                            closeQuietly(channel);
+                            MetricsRegistry.tcpActiveConnections.decrementAndGet();
+                        }
+                    }
+
+                    Connection pending;
+                    while ((pending = pendingWrites.poll()) != null) {
+                        pending.onResponsesQueued();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastIdleCheck >= IDLE_CHECK_MS) {
+                        lastIdleCheck = now;
+                        for (SelectionKey key : selector.keys()) {
+                            ((Connection) key.attachment()).closeIfIdle(now);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                ExceptionHandler.handle(e, "TCP selector loop");
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                closeQuietly(selector);
+            }
+        }
+    }
+
+    /**
+     * Per-connection state. Everything except complete() runs on the owning selector thread.
+     */
+    private final class Connection {
+        final SelectorLoop loop;
+        final SocketChannel channel;
+        final SelectionKey key;
+        final String client; // remote address, for rate limits
+        final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        // Requests accepted but not yet answered (queued, processing, or response not yet queued)
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        int scanned; // bytes at the start of readBuffer already searched for '\n'
+        // Untagged requests are chained so they complete in arrival order
+        CompletableFuture<Void> inOrder = CompletableFuture.completedFuture(null);
+        int served;
+        // Unknown (null) until the first bytes arrive: JSON lines or BinaryProtocol frames
+        Boolean binary;
+        long lastActivity = System.currentTimeMillis();
+        boolean inputClosed;
+        boolean readPaused;
+        boolean closed;
+
+        Connection(SelectorLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.client = channel.socket().getInetAddress().getHostAddress();
+        }
+
+        void read() throws IOException {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                inputClosed = true;
+                disableRead();
+                if (readBuffer.position() > 0 && Boolean.FALSE.equals(binary)) {
+                    // Last request without a trailing newline, as readLine() would return it
+                    handleLine(readBuffer.array(), 0, readBuffer.position());
+                    readBuffer.clear();
+                }
+                closeIfDone();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processInput();
+
+            if (!readBuffer.hasRemaining() && !readPaused && !closed && Boolean.FALSE.equals(binary)) {
+                // No newline in a full buffer: grow it, up to MAX_LINE_BYTES
+                if (readBuffer.capacity() >= MAX_LINE_BYTES) {
+                    inputClosed = true;
+                    disableRead();
+                    inFlight.incrementAndGet();
+                    complete(JsonUtils.createErrorResponse("Request too large"));
+                    return;
+                }
+                ByteBuffer larger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        private void processInput() {
+            if (binary == null && !detectProtocol()) {
+                return;
+            }
+            if (binary) {
+                processFrames();
+            } else {
+                processLines();
+            }
+        }
+
+        // True once the first bytes decided the protocol
+        private boolean detectProtocol() {
+            byte[] data = readBuffer.array();
+            int end = readBuffer.position();
+            if (end == 0) {
+                return false;
+            }
+            if (data[0] != BinaryProtocol.HANDSHAKE[0]) {
+                binary = false;
+                return true;
+            }
+            int length = BinaryProtocol.HANDSHAKE.length;
+            if (end < length) {
+                return false;
+            }
+            if (!Arrays.equals(data, 0, length, BinaryProtocol.HANDSHAKE, 0, length)) {
+                System.out.println("[WARN] Unsupported binary protocol handshake");
+                close();
+                return false;
+            }
+            binary = true;
+            readBuffer.flip();
+            readBuffer.position(length);
+            readBuffer.compact();
+            writeQueue.add(ByteBuffer.wrap(BinaryProtocol.HANDSHAKE.clone()));
+            loop.requestFlush(this);
+            return true;
+        }
+
+        // Handle every complete frame in readBuffer, unless reading is paused
+        private void processFrames() {
+            byte[] data = readBuffer.array();
+            int end = readBuffer.position();
+            int frameStart = 0;
+            while (!readPaused && !closed && end - frameStart >= 4) {
+                int length = BinaryProtocol.readInt(data, frameStart);
+                if (length < 0 || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                    inputClosed = true;
+                    disableRead();
+                    inFlight.incrementAndGet();
+                    completeFrame(BinaryProtocol.errorFrame(0, "Frame too large"));
+                    return;
+                }
+                if (end - frameStart - 4 < length) {
+                    break;
+                }
+                handleFrame(Arrays.copyOfRange(data, frameStart + 4, frameStart + 4 + length));
+                frameStart += 4 + length;
+            }
+            if (closed) {
+                return;
+            }
+            readBuffer.flip();
+            readBuffer.position(frameStart);
+            readBuffer.compact();
+            // Make room for a frame larger than the buffer
+            if (readBuffer.position() >= 4) {
+                int needed = 4 + BinaryProtocol.readInt(readBuffer.array(), 0);
+                if (needed > readBuffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(needed);
+                    readBuffer.flip();
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                }
+            }
+        }
+
+        private void handleFrame(byte[] frame) {
+            MetricsRegistry.tcpRequests.incrementAndGet();
+            MetricsRegistry.tcpBytesIn.addAndGet(4 + frame.length);
+            served++;
+            inFlight.incrementAndGet();
+            int requestId = BinaryProtocol.requestIdOf(frame);
+            byte[] refusal = processor.admit(client, frame);
+            if (refusal != null) {
+                inOrder = inOrder.thenRun(() -> completeFrame(refusal));
+            } else {
+                inOrder = inOrder.thenRunAsync(() -> completeFrame(processor.processAdmitted(frame)), workerPool)
+                        .exceptionally(e -> {
+                            processor.release();
+                            completeFrame(running ? TaskRequestProcessor.busyFrame(requestId)
+                                    : BinaryProtocol.errorFrame(requestId, "Server is shutting down"));
+                            return null;
+                        });
+            }
+            pauseIfNeeded();
+        }
+
+        // Handle every complete line in readBuffer, unless reading is paused
+        private void processLines() {
+            byte[] data = readBuffer.array();
+            int end = readBuffer.position();
+            int lineStart = 0;
+            for (int i = scanned; i < end && !readPaused && !closed; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                int lineEnd = i > lineStart && data[i - 1] == '\r' ? i - 1 : i;
+                handleLine(data, lineStart, lineEnd - lineStart);
+                lineStart = i + 1;
+            }
+            if (closed) {
+                return;
+            }
+            // Drop handled lines, keep the partial one (and any lines left while paused)
+            readBuffer.flip();
+            readBuffer.position(lineStart);
+            readBuffer.compact();
+            scanned = readPaused ? 0 : readBuffer.position();
+        }
+
+        private void handleLine(byte[] data, int offset, int length) {
+            String line = new String(data, offset, length, StandardCharsets.UTF_8);
+            if (line.trim().isEmpty()) {
+                return;
+            }
+            MetricsRegistry.tcpRequests.incrementAndGet();
+            MetricsRegistry.tcpBytesIn.addAndGet(length);
+            served++;
+            inFlight.incrementAndGet();
+
+            // Malformed lines come back as requests carrying the error
+            TaskRequest request = processor.parse(line);
+            JsonElement requestId = request.getRequestId();
+            String refusal = processor.admit(client, request);
+            if (refusal != null) {
+                // Rate limited or over capacity: answer now, without queueing (in order if untagged)
+                if (requestId == null) {
+                    inOrder = inOrder.thenRun(() -> complete(refusal));
+                } else {
+                    complete(TaskRequestProcessor.withRequestId(refusal, requestId));
+                }
+            } else if (requestId == null) {
+                // A rejected stage completes exceptionally instead of throwing
+                inOrder = inOrder.thenRunAsync(() -> complete(processor.processAdmitted(request)), workerPool)
+                        .exceptionally(e -> {
+                            processor.release();
+                            complete(rejectedResponse());
+                            return null;
+                        });
+            } else {
+                try {
+                    workerPool.execute(() ->
+                            complete(TaskRequestProcessor.withRequestId(processor.processAdmitted(request), requestId)));
+                } catch (RejectedExecutionException e) {
+                    processor.release();
+                    complete(TaskRequestProcessor.withRequestId(rejectedResponse(), requestId));
+                }
+            }
+            pauseIfNeeded();
+        }
+
+        // The worker pool refused a request: its queue is full, or the server is stopping
+        private String rejectedResponse() {
+            return running ? TaskRequestProcessor.busyResponse() : JsonUtils.createErrorResponse("Server is shutting down");
+        }
+
+        private void pauseIfNeeded() {
+            if (inFlight.get() >= TCPTaskServer.MAX_IN_FLIGHT || served >= TCPTaskServer.MAX_REQUESTS_PER_CONNECTION) {
+                readPaused = true;
+                disableRead();
+            }
+        }
+
+        /**
+         * Called from worker threads (or inline) with the response to one request.
+         */
+        void complete(String response) {
+            byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8);
+            MetricsRegistry.tcpBytesOut.addAndGet(bytes.length - 1);
+            enqueue(bytes);
+        }
+
+        void completeFrame(byte[] frame) {
+            MetricsRegistry.tcpBytesOut.addAndGet(frame.length);
+            enqueue(frame);
+        }
+
+        private void enqueue(byte[] bytes) {
+            writeQueue.add(ByteBuffer.wrap(bytes));
+            // Decrement after queueing, so closeIfDone() never sees an unanswered request as done
+            inFlight.decrementAndGet();
+            loop.requestFlush(this);
+        }
+
+        // Selector thread, after complete() queued responses
+        void onResponsesQueued() {
+            if (closed) {
+                return;
+            }
+            if (readPaused && inFlight.get() < TCPTaskServer.MAX_IN_FLIGHT
+                    && served < TCPTaskServer.MAX_REQUESTS_PER_CONNECTION) {
+                // Requests buffered while paused go first, so closeIfDone() below sees them in flight
+                readPaused = false;
+                processInput();
+                if (!readPaused && !inputClosed) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    // Socket buffer full; continue when the selector reports it writable
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            lastActivity = System.currentTimeMillis();
+            closeIfDone();
+        }
+
+        private void closeIfDone() {
+            boolean noMoreInput = inputClosed || served >= TCPTaskServer.MAX_REQUESTS_PER_CONNECTION;
+            if (noMoreInput && inFlight.get() == 0 && writeQueue.isEmpty()) {
+                close();
+            }
+        }
+
+        void closeIfIdle(long now) {
+            if (inFlight.get() == 0 && writeQueue.isEmpty() && now - lastActivity > TCPTaskServer.IDLE_TIMEOUT_MS) {
+                close();
+            }
+        }
+
+        private void disableRead() {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            key.cancel();
+            closeQuietly(channel);
+            MetricsRegistry.tcpActiveConnections.decrementAndGet();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing useful to do
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package tcp;
+
+import com.google.gson.JsonObject;
+import shared.JsonUtils;
+import shared.Task;
+import shared.TaskSnapshotCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compares the JSON line protocol with BinaryProtocol on one connection: N creates, then
+ * N gets of the created tasks, with up to WINDOW requests outstanding. Reports ops/s and
+ * bytes on the wire per operation (request + response), e.g.
+ *
+ *   java -Dnetstream.tcp.maxRequestsPerConnection=100000 tcp.TCPTaskServer
+ *   java tcp.ProtocolBenchmark 20000 32
+ */
+public class ProtocolBenchmark {
+    private static final String HOST = "localhost";
+    private static final int PORT = 8080;
+
+    private static final String DESCRIPTION = "Benchmark task with a description of typical length, "
+            + "a sentence or two about what needs to be done.";
+
+    private final int count;
+    private final int window;
+
+    private ProtocolBenchmark(int count, int window) {
+        this.count = count;
+        this.window = window;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        ProtocolBenchmark benchmark = new ProtocolBenchmark(count, window);
+        System.out.printf("[Bench] %,d operations per phase, window %d%n", count, window);
+        benchmark.runJson();
+        benchmark.runBinary();
+    }
+
+    private void runJson() throws IOException {
+        try (Socket socket = new Socket(HOST, PORT)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new OutputStreamWriter(new BufferedOutputStream(socket.getOutputStream()), StandardCharsets.UTF_8);
+            String[] ids = new String[count];
+
+            long bytes = 0;
+            long start = System.nanoTime();
+            int sent = 0;
+            for (int received = 0; received < count; received++) {
+                while (sent < count && sent - received < window) {
+                    JsonObject data = new JsonObject();
+                    data.addProperty("title", "Task " + sent);
+                    data.addProperty("assignee", "bench");
+                    data.addProperty("priority", "high");
+                    data.addProperty("description", DESCRIPTION);
+                    JsonObject request = new JsonObject();
+                    request.addProperty("action", "CREATE_TASK");
+                    request.add("data", data);
+                    bytes += writeLine(out, request.toString());
+                    sent++;
+                }
+                out.flush();
+                String line = in.readLine();
+                bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                ids[received] = JsonUtils.parseJson(line).getAsJsonObject("data").get("taskId").getAsString();
+            }
+            report("json", "create", start, bytes);
+
+            bytes = 0;
+            start = System.nanoTime();
+            sent = 0;
+            for (int received = 0; received < count; received++) {
+                while (sent < count && sent - received < window) {
+                    bytes += writeLine(out, "{\"action\":\"GET_TASK\",\"data\":{\"taskId\":\"" + ids[sent] + "\"}}");
+                    sent++;
+                }
+                out.flush();
+                String line = in.readLine();
+                bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+                String id = JsonUtils.parseJson(line).getAsJsonObject("data").get("id").getAsString();
+                check(ids[received].equals(id), line);
+            }
+            report("json", "get", start, bytes);
+        }
+    }
+
+    private static int writeLine(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        return line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    private void runBinary() throws IOException {
+        try (Socket socket = new Socket(HOST, PORT)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            out.write(BinaryProtocol.HANDSHAKE);
+            out.flush();
+            byte[] handshake = new byte[BinaryProtocol.HANDSHAKE.length];
+            in.readFully(handshake);
+            check(Arrays.equals(handshake, BinaryProtocol.HANDSHAKE), "handshake rejected");
+            String[] ids = new String[count];
+
+            long bytes = 0;
+            long start = System.nanoTime();
+            int sent = 0;
+            for (int received = 0; received < count; received++) {
+                while (sent < count && sent - received < window) {
+                    BinaryProtocol.Frame request = BinaryProtocol.request(BinaryProtocol.CREATE, sent);
+                    BinaryProtocol.writeFields(request,
+                            TaskFields.TITLE, "Task " + sent,
+                            TaskFields.ASSIGNEE, "bench",
+                            TaskFields.PRIORITY, "high",
+                            TaskFields.DESCRIPTION, DESCRIPTION);
+                    byte[] frame = request.toFrame();
+                    out.write(frame);
+                    bytes += frame.length;
+                    sent++;
+                }
+                out.flush();
+                byte[] response = readFrame(in, received);
+                bytes += 4 + response.length;
+                ids[received] = TaskSnapshotCodec.readString(response, new int[] { 5 });
+            }
+            report("binary", "create", start, bytes);
+
+            bytes = 0;
+            start = System.nanoTime();
+            sent = 0;
+            for (int received = 0; received < count; received++) {
+                while (sent < count && sent - received < window) {
+                    BinaryProtocol.Frame request = BinaryProtocol.request(BinaryProtocol.GET, sent);
+                    TaskSnapshotCodec.writeString(request, ids[sent]);
+                    byte[] frame = request.toFrame();
+                    out.write(frame);
+                    bytes += frame.length;
+                    sent++;
+                }
+                out.flush();
+                byte[] response = readFrame(in, received);
+                bytes += 4 + response.length;
+                Task task = TaskSnapshotCodec.readTask(response, new int[] { 5 });
+                check(ids[received].equals(task.getId()), task.getId());
+            }
+            report("binary", "get", start, bytes);
+        }
+    }
+
+    // Status byte onwards; fails on an error status or an out-of-order requestId
+    private static byte[] readFrame(DataInputStream in, int expectedRequestId) throws IOException {
+        byte[] response = new byte[in.readInt()];
+        in.readFully(response);
+        if (response[0] != BinaryProtocol.OK) {
+            throw new IOException("Request " + expectedRequestId + " failed: "
+                    + TaskSnapshotCodec.readString(response, new int[] { 5 }));
+        }
+        check(BinaryProtocol.readInt(response, 1) == expectedRequestId, "response out of order");
+        return response;
+    }
+
+    private void report(String protocol, String phase, long startNanos, long bytes) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.printf("[Bench] %-6s %-6s %,9.0f ops/s  %,6.1f bytes/op%n",
+                protocol, phase, count * 1e9 / elapsedNanos, (double) bytes / count);
+    }
+
+    private static void check(boolean condition, String message) throws IOException {
+        if (!condition) {
+            throw new IOException("Unexpected response: " + message);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package tcp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import shared.JsonUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+/**
+ * Time and allocation per request for TaskRequestProcessor.parse() (streaming, typed)
+ * against parsing into a JsonObject tree and reading the members from it, as the handlers
+ * did before. Decoding only; nothing touches the DataStore.
+ *
+ *   java tcp.RequestDecodingBenchmark [iterations]
+ */
+public class RequestDecodingBenchmark {
+    private static final String[][] REQUESTS = {
+        { "GET_TASK", "{\"requestId\":17,\"action\":\"GET_TASK\",\"data\":{\"taskId\":\"task_369583432084226048\"}}" },
+        { "CREATE_TASK", "{\"action\":\"CREATE_TASK\",\"data\":{\"title\":\"Implement NIO Server\",\"assignee\":\"Member 5\","
+                + "\"deadline\":\"2025-10-30\",\"priority\":\"high\",\"description\":\"Selector loop, buffers and write queue\"}}" },
+        { "UPDATE_TASK", "{\"requestId\":\"u-1\",\"action\":\"UPDATE_TASK\",\"data\":{\"taskId\":\"task_369583432084226048\","
+                + "\"expectedVersion\":3,\"status\":\"completed\"}}" },
+        { "BATCH_CREATE x100", batchCreate(100) },
+    };
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Keeps results reachable so the JIT cannot drop the work
+    private static int sink;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        TaskRequestProcessor processor = new TaskRequestProcessor();
+
+        System.out.printf("[Bench] %-18s %12s %12s %14s %14s%n", "request", "tree ns", "stream ns", "tree bytes", "stream bytes");
+        for (String[] request : REQUESTS) {
+            String line = request[1];
+            int n = request[0].startsWith("BATCH") ? Math.max(1, iterations / 100) : iterations;
+            // Warm up both paths before measuring
+            for (int round = 0; round < 2; round++) {
+                measure(n, () -> sink += readTree(line));
+                measure(n, () -> sink += processor.parse(line).action.length());
+            }
+            long[] tree = measure(n, () -> sink += readTree(line));
+            long[] stream = measure(n, () -> sink += processor.parse(line).action.length());
+            System.out.printf("[Bench] %-18s %,12d %,12d %,14d %,14d%n", request[0], tree[0], stream[0], tree[1], stream[1]);
+        }
+    }
+
+    // {ns per request, bytes allocated per request}
+    private static long[] measure(int iterations, Runnable decode) {
+        long threadId = Thread.currentThread().getId();
+        long allocated = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decode.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = THREADS.getThreadAllocatedBytes(threadId) - allocated;
+        return new long[] { elapsed / iterations, allocated / iterations };
+    }
+
+    // The former path: whole line into a tree, then every member read from it
+    private static int readTree(String line) {
+        JsonObject request = JsonUtils.parseJson(line);
+        int read = request.get("action").getAsString().length();
+        JsonElement requestId = request.get("requestId");
+        if (requestId != null) {
+            read += requestId.toString().length();
+        }
+        read += readMembers(request.getAsJsonObject("data"));
+        return read;
+    }
+
+    private static int readMembers(JsonObject object) {
+        int read = 0;
+        for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+            JsonElement value = member.getValue();
+            if (value.isJsonPrimitive()) {
+                read += value.getAsString().length();
+            } else if (value.isJsonArray()) {
+                for (JsonElement item : value.getAsJsonArray()) {
+                    read += readMembers(item.getAsJsonObject());
+                }
+            }
+        }
+        return read;
+    }
+
+    private static String batchCreate(int items) {
+        StringBuilder line = new StringBuilder("{\"action\":\"BATCH_CREATE\",\"data\":{\"tasks\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append("{\"title\":\"Imported task ").append(i)
+                    .append("\",\"assignee\":\"Member ").append(i % 5)
+                    .append("\",\"priority\":\"low\",\"deadline\":\"2025-12-01\"}");
+        }
+        return line.append("]}}").toString();
+    }
+}
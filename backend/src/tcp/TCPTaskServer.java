@@ -1,41 +1,67 @@
 package tcp;
 
-import com.google.gson.JsonObject;
+import com.google.gson.JsonElement;
 import shared.DataStore;
 import shared.JsonUtils;
-import shared.Task;
 import threading.ThreadPoolManager;
 import threading.ExceptionHandler;
-import udp.UDPNotificationServer;
 import shared.MetricsRegistry;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class TCPTaskServer implements TaskServer {
+    // Connection limits, shared with NioTaskServer.
+    // Persistent connections: a client may send many newline-delimited requests on one socket.
+    // The connection is closed after IDLE_TIMEOUT_MS without a request or after
+    // MAX_REQUESTS_PER_CONNECTION requests; connections beyond MAX_CONNECTIONS are refused.
+    static final int IDLE_TIMEOUT_MS = Integer.getInteger("netstream.tcp.idleTimeoutMs", 30000);
+    static final int MAX_REQUESTS_PER_CONNECTION = Integer.getInteger("netstream.tcp.maxRequestsPerConnection", 1000);
+    static final int MAX_CONNECTIONS = Integer.getInteger("netstream.tcp.maxConnections", 1000);
+
+    // Pipelining: requests carrying a "requestId" run concurrently on the worker pool and are
+    // answered as they complete, with the same requestId. At most MAX_IN_FLIGHT per connection;
+    // beyond that the connection stops reading until one finishes.
+    static final int MAX_IN_FLIGHT = Integer.getInteger("netstream.tcp.maxInFlight", 64);
 
-public class TCPTaskServer {
     private final int port;
     private ServerSocket serverSocket;
     private volatile boolean running = false;
-    private ExecutorService threadPool;
+    private ExecutorService connectionPool;
+    private ExecutorService workerPool;
+    private final TaskRequestProcessor processor = new TaskRequestProcessor();
 
     public TCPTaskServer(int port) {
         this.port = port;
     }
 
+    @Override
     public void start() {
         try {
             serverSocket = new ServerSocket(port);
             serverSocket.setSoTimeout(1000); // 1 second timeout for accept()
             running = true;
 
-            threadPool = ThreadPoolManager.getThreadPool();
+            connectionPool = ThreadPoolManager.getConnectionPool();
+            workerPool = ThreadPoolManager.getThreadPool();
 
             System.out.println("[INFO] TCP Server started on port " + port);
             System.out.println("[INFO] Listening for client connections...");
@@ -45,9 +71,12 @@ public class TCPTaskServer {
                     Socket clientSocket = serverSocket.accept();
                     System.out.println("[INFO] Client connected: " + clientSocket.getInetAddress());
                     MetricsRegistry.tcpConnections.incrementAndGet();
-                    MetricsRegistry.tcpActiveConnections.incrementAndGet();
-                    
-                    threadPool.submit(() -> handleClient(clientSocket));
+                    if (MetricsRegistry.tcpActiveConnections.incrementAndGet() > MAX_CONNECTIONS) {
+                        refuse(clientSocket);
+                        continue;
+                    }
+
+                    connectionPool.submit(() -> handleClient(clientSocket));
                     
                 } catch (SocketTimeoutException e) {
                     // Timeout is normal, allows checking 'running' flag
@@ -69,38 +98,45 @@ public class TCPTaskServer {
         }
     }
 
-    private void handleClient(Socket clientSocket) {
-        try (
-            BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)
-        ) {
-            // Set read timeout
-            clientSocket.setSoTimeout(5000); // 5 seconds
-
-            // Read request
-            String request = in.readLine();
-            
-            if (request == null || request.trim().isEmpty()) {
-                out.println(JsonUtils.createErrorResponse("Empty request"));
-                return;
-            }
-
-            System.out.println("[DEBUG] Received: " + request);
-            MetricsRegistry.tcpRequests.incrementAndGet();
-            MetricsRegistry.tcpBytesIn.addAndGet(request.getBytes().length);
+    private void refuse(Socket clientSocket) {
+        try (Socket socket = clientSocket;
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            out.println(JsonUtils.createErrorResponse("Too many connections"));
+        } catch (IOException e) {
+            // Client is gone already
+        } finally {
+            MetricsRegistry.tcpActiveConnections.decrementAndGet();
+        }
+        System.out.println("[WARN] Refused client, " + MAX_CONNECTIONS + " connections open");
+    }
 
-            // Process request and send response
-            String response = processRequest(request);
-            out.println(response);
-            System.out.println("[DEBUG] Sent: " + response);
-            if (response != null) {
-                MetricsRegistry.tcpBytesOut.addAndGet(response.getBytes().length);
+    /**
+     * Serve requests from one client until it disconnects, stays idle for IDLE_TIMEOUT_MS
+     * or reaches MAX_REQUESTS_PER_CONNECTION. The first byte picks the protocol: the
+     * BinaryProtocol handshake, or else JSON lines.
+     */
+    private void handleClient(Socket clientSocket) {
+        try {
+            clientSocket.setSoTimeout(IDLE_TIMEOUT_MS);
+            clientSocket.setTcpNoDelay(true);
+
+            String client = clientSocket.getInetAddress().getHostAddress();
+            BufferedInputStream input = new BufferedInputStream(clientSocket.getInputStream());
+            input.mark(1);
+            if (input.read() == (BinaryProtocol.HANDSHAKE[0] & 0xFF)) {
+                serveBinary(client, input, clientSocket.getOutputStream());
+            } else {
+                input.reset();
+                serveLines(client, input, clientSocket.getOutputStream());
             }
 
         } catch (SocketTimeoutException e) {
-            ExceptionHandler.handle(e, "Client connection timeout");
+            // Idle keep-alive connection; closing it is routine
+            System.out.println("[INFO] Closing idle client connection");
         } catch (IOException e) {
             ExceptionHandler.handle(e, "Client communication error");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
             try {
                 clientSocket.close();
@@ -112,210 +148,136 @@ public class TCPTaskServer {
         }
     }
 
-    private String processRequest(String requestJson) {
+    /**
+     * JSON line protocol. Blank lines between requests are ignored (the gateway and the
+     * monitor end each request with one).
+     *
+     * Requests without a requestId are answered in order, one at a time. Requests with one
+     * are handed to the worker pool, so their responses may arrive out of order (also
+     * relative to untagged requests); each response echoes its requestId.
+     */
+    private void serveLines(String client, InputStream input, OutputStream output) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        // UTF-8 whatever the platform default, as NioTaskServer and the gateway
+        BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
         try {
-            JsonObject request = JsonUtils.parseJson(requestJson);
-            
-            if (!request.has("action")) {
-                return JsonUtils.createErrorResponse("Missing 'action' field");
-            }
-
-            String action = request.get("action").getAsString();
-
-            switch (action) {
-                case "CREATE_TASK":
-                    return handleCreateTask(request);
-                
-                case "GET_TASKS":
-                    return handleGetTasks();
-                
-                case "GET_TASK":
-                    return handleGetTask(request);
-                
-                case "UPDATE_TASK":
-                    return handleUpdateTask(request);
-                
-                case "DELETE_TASK":
-                    return handleDeleteTask(request);
-                
-                default:
-                    return JsonUtils.createErrorResponse("Unknown action: " + action);
-            }
+            int served = 0;
+            String line;
+            while (running && served < MAX_REQUESTS_PER_CONNECTION && (line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
 
-        } catch (Exception e) {
-            return JsonUtils.createErrorResponse(e);
-        }
-    }
+                System.out.println("[DEBUG] Received: " + line);
+                MetricsRegistry.tcpRequests.incrementAndGet();
+                MetricsRegistry.tcpBytesIn.addAndGet(line.getBytes(StandardCharsets.UTF_8).length);
+                served++;
+
+                // Malformed lines come back as requests carrying the error
+                TaskRequest request = processor.parse(line);
+                JsonElement requestId = request.getRequestId();
+                String refusal = processor.admit(client, request);
+                if (refusal != null) {
+                    send(out, requestId == null ? refusal : TaskRequestProcessor.withRequestId(refusal, requestId));
+                    continue;
+                }
+                if (requestId == null) {
+                    send(out, processor.processAdmitted(request));
+                    continue;
+                }
 
-    private String handleCreateTask(JsonObject request) {
-        try {
-            if (!request.has("data")) {
-                return JsonUtils.createErrorResponse("Missing 'data' field");
+                inFlight.acquire();
+                try {
+                    workerPool.execute(() -> {
+                        try {
+                            send(out, TaskRequestProcessor.withRequestId(processor.processAdmitted(request), requestId));
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // Worker queue full (or shutting down)
+                    inFlight.release();
+                    processor.release();
+                    String error = running ? TaskRequestProcessor.busyResponse()
+                            : JsonUtils.createErrorResponse("Server is shutting down");
+                    send(out, TaskRequestProcessor.withRequestId(error, requestId));
+                }
             }
-
-            JsonObject data = request.getAsJsonObject("data");
-            
-            // Validate required fields
-            if (!data.has("title") || !data.has("assignee")) {
-                return JsonUtils.createErrorResponse("Missing required fields: title, assignee");
+        } finally {
+            // Let pipelined requests finish and answer before the socket is closed
+            if (!inFlight.tryAcquire(MAX_IN_FLIGHT, IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                System.out.println("[WARN] Closing connection with requests still in flight");
             }
-
-            // Generate unique ID
-            String id = "task_" + System.currentTimeMillis();
-            String title = data.get("title").getAsString();
-            String assignee = data.get("assignee").getAsString();
-            String deadline = data.has("deadline") ? data.get("deadline").getAsString() : "";
-            String priority = data.has("priority") ? data.get("priority").getAsString() : "medium";
-
-            // Create and store task
-            Task task = new Task(id, title, assignee, deadline, priority);
-            // Optional fields
-            if (data.has("description")) task.setDescription(data.get("description").getAsString());
-            if (data.has("attachedUrl")) task.setAttachedUrl(data.get("attachedUrl").getAsString());
-            if (data.has("weatherNote")) task.setWeatherNote(data.get("weatherNote").getAsString());
-            DataStore.addTask(task);
-
-            // Broadcast with assignee name in the format:
-            // TASK_CREATED|task_123|Task 'title' assigned to John Doe
-            String notification = "TASK_CREATED|" + task.getId() + "|Task '" + task.getTitle() + "' assigned to " + task.getAssignee();
-            UDPNotificationServer.broadcast(notification);
-
-
-            // Return success response
-            JsonObject responseData = new JsonObject();
-            responseData.addProperty("taskId", id);
-            responseData.addProperty("message", "Task created successfully");
-            
-            return JsonUtils.createSuccessResponse(responseData);
-
-        } catch (Exception e) {
-            return JsonUtils.createErrorResponse(e);
         }
     }
 
-    private String handleGetTasks() {
-        try {
-            List<Task> tasks = DataStore.getAllTasks();
-            return JsonUtils.createSuccessResponse(tasks);
-        } catch (Exception e) {
-            return JsonUtils.createErrorResponse(e);
+    /**
+     * BinaryProtocol, after its first byte. Frames are answered in order; responses are
+     * flushed once no further request is already buffered, so a pipelining client gets
+     * them in batches.
+     */
+    private void serveBinary(String client, InputStream input, OutputStream output) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        BufferedOutputStream out = new BufferedOutputStream(output, 8192);
+
+        byte[] handshake = new byte[BinaryProtocol.HANDSHAKE.length];
+        handshake[0] = BinaryProtocol.HANDSHAKE[0];
+        in.readFully(handshake, 1, handshake.length - 1);
+        if (!Arrays.equals(handshake, BinaryProtocol.HANDSHAKE)) {
+            System.out.println("[WARN] Unsupported binary protocol handshake");
+            return;
         }
-    }
+        out.write(BinaryProtocol.HANDSHAKE);
+        out.flush();
 
-    private String handleGetTask(JsonObject request) {
-        try {
-            if (!request.has("data")) {
-                return JsonUtils.createErrorResponse("Missing 'data' field");
+        int served = 0;
+        while (running && served < MAX_REQUESTS_PER_CONNECTION) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                break;
             }
-
-            JsonObject data = request.getAsJsonObject("data");
-            
-            if (!data.has("taskId")) {
-                return JsonUtils.createErrorResponse("Missing 'taskId' field");
+            if (length < 0 || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                out.write(BinaryProtocol.errorFrame(0, "Frame too large"));
+                break;
             }
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            MetricsRegistry.tcpRequests.incrementAndGet();
+            MetricsRegistry.tcpBytesIn.addAndGet(4 + length);
+            served++;
 
-            String taskId = data.get("taskId").getAsString();
-            Task task = DataStore.getTask(taskId);
-
-            if (task == null) {
-                return JsonUtils.createErrorResponse("Task not found: " + taskId);
+            byte[] response = processor.admit(client, frame);
+            if (response == null) {
+                response = processor.processAdmitted(frame);
+            }
+            out.write(response);
+            MetricsRegistry.tcpBytesOut.addAndGet(response.length);
+            if (in.available() == 0) {
+                out.flush();
             }
-
-            return JsonUtils.createSuccessResponse(task);
-
-        } catch (Exception e) {
-            return JsonUtils.createErrorResponse(e);
         }
+        out.flush();
     }
 
-    private String handleUpdateTask(JsonObject request) {
-        try {
-            if (!request.has("data")) {
-                return JsonUtils.createErrorResponse("Missing 'data' field");
-            }
-
-            JsonObject data = request.getAsJsonObject("data");
-            
-            if (!data.has("taskId")) {
-                return JsonUtils.createErrorResponse("Missing 'taskId' field");
-            }
-
-            String taskId = data.get("taskId").getAsString();
-            Task task = DataStore.getTask(taskId);
-
-            if (task == null) {
-                return JsonUtils.createErrorResponse("Task not found: " + taskId);
-            }
-
-            // Update fields if provided
-            if (data.has("title")) {
-                task.setTitle(data.get("title").getAsString());
-            }
-            if (data.has("assignee")) {
-                task.setAssignee(data.get("assignee").getAsString());
-            }
-            if (data.has("status")) {
-                task.setStatus(data.get("status").getAsString());
-            }
-            if (data.has("deadline")) {
-                task.setDeadline(data.get("deadline").getAsString());
-            }
-            if (data.has("priority")) {
-                task.setPriority(data.get("priority").getAsString());
-            }
-            if (data.has("description")) task.setDescription(data.get("description").getAsString());
-            if (data.has("attachedUrl")) task.setAttachedUrl(data.get("attachedUrl").getAsString());
-            if (data.has("weatherNote")) task.setWeatherNote(data.get("weatherNote").getAsString());
-
-            DataStore.updateTask(taskId, task);
-
-            // Broadcast with format: TASK_UPDATED|task_123|Task 'title' updated by Assignee Name
-            String notification = "TASK_UPDATED|" + taskId + "|Task '" + task.getTitle() + "' updated by " + task.getAssignee();
-            UDPNotificationServer.broadcast(notification);
-
-
-            return JsonUtils.createSuccessResponse("Task updated successfully");
-
-        } catch (Exception e) {
-            return JsonUtils.createErrorResponse(e);
+    // Called from the connection thread and from workers; println is atomic per PrintWriter
+    private void send(PrintWriter out, String response) {
+        out.println(response);
+        System.out.println("[DEBUG] Sent: " + response);
+        if (response != null) {
+            MetricsRegistry.tcpBytesOut.addAndGet(response.getBytes(StandardCharsets.UTF_8).length);
         }
     }
 
-    private String handleDeleteTask(JsonObject request) {
-        try {
-            if (!request.has("data")) {
-                return JsonUtils.createErrorResponse("Missing 'data' field");
-            }
-
-            JsonObject data = request.getAsJsonObject("data");
-            
-            if (!data.has("taskId")) {
-                return JsonUtils.createErrorResponse("Missing 'taskId' field");
-            }
-
-            String taskId = data.get("taskId").getAsString();
-            
-            // Get task before deleting to include assignee in notification
-            Task task = DataStore.getTask(taskId);
-            boolean deleted = DataStore.deleteTask(taskId);
-
-            if (deleted && task != null) {
-                // Broadcast with format: TASK_DELETED|task_123|Task 'title' deleted (was assigned to Assignee Name)
-                String notification = "TASK_DELETED|" + taskId + "|Task '" + task.getTitle() + "' deleted (was assigned to " + task.getAssignee() + ")";
-                UDPNotificationServer.broadcast(notification);
-            }
-
-            if (!deleted) {
-                return JsonUtils.createErrorResponse("Task not found: " + taskId);
-            }
-
-            return JsonUtils.createSuccessResponse("Task deleted successfully");
-
-        } catch (Exception e) {
-            return JsonUtils.createErrorResponse(e);
-        }
+    @Override
+    public TaskRequestProcessor processor() {
+        return processor;
     }
 
+    @Override
     public void stop() {
         running = false;
         try {
@@ -331,12 +293,13 @@ public class TCPTaskServer {
 
     // For testing
     public static void main(String[] args) {
-        TCPTaskServer server = new TCPTaskServer(8080);
+        TaskServer server = TaskServer.create(8080);
         
         // Add shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n[INFO] Shutting down server...");
             server.stop();
+            DataStore.shutdown();
         }));
         
         server.start();
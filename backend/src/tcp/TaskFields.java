@@ -0,0 +1,94 @@
+package tcp;
+
+import com.google.gson.stream.JsonReader;
+import shared.Task;
+
+import java.io.IOException;
+
+/**
+ * The task fields a create or update request sets, as sent (null = not sent). Read from
+ * a JSON request or a binary frame, then applied to a Task.Builder.
+ */
+final class TaskFields {
+    // Field numbers used by BinaryProtocol
+    static final int TITLE = 1;
+    static final int ASSIGNEE = 2;
+    static final int STATUS = 3;
+    static final int DEADLINE = 4;
+    static final int PRIORITY = 5;
+    static final int DESCRIPTION = 6;
+    static final int ATTACHED_URL = 7;
+    static final int WEATHER_NOTE = 8;
+
+    String title;
+    String assignee;
+    String status;
+    String deadline;
+    String priority;
+    String description;
+    String attachedUrl;
+    String weatherNote;
+
+    // JSON names, indexed by field number
+    private static final String[] NAMES = {
+            null, "title", "assignee", "status", "deadline", "priority", "description", "attachedUrl", "weatherNote" };
+
+    /**
+     * Field number of a JSON name, or 0 if it is not a task field.
+     */
+    static int fieldNumber(String name) {
+        for (int i = 1; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Read a JSON object of task fields, skipping any other members.
+     */
+    static TaskFields read(JsonReader in) throws IOException {
+        TaskFields fields = new TaskFields();
+        in.beginObject();
+        while (in.hasNext()) {
+            int field = fieldNumber(in.nextName());
+            if (field == 0) {
+                in.skipValue();
+            } else {
+                fields.set(field, TaskRequests.readString(in));
+            }
+        }
+        in.endObject();
+        return fields;
+    }
+
+    void set(int field, String value) {
+        switch (field) {
+            case TITLE: title = value; break;
+            case ASSIGNEE: assignee = value; break;
+            case STATUS: status = value; break;
+            case DEADLINE: deadline = value; break;
+            case PRIORITY: priority = value; break;
+            case DESCRIPTION: description = value; break;
+            case ATTACHED_URL: attachedUrl = value; break;
+            case WEATHER_NOTE: weatherNote = value; break;
+            default: throw new IllegalArgumentException("Unknown task field: " + field);
+        }
+    }
+
+    /**
+     * Set every field that was sent; invalid status or priority values throw IllegalArgumentException.
+     */
+    Task.Builder applyTo(Task.Builder builder) {
+        if (title != null) builder.title(title);
+        if (assignee != null) builder.assignee(assignee);
+        if (status != null) builder.status(status);
+        if (deadline != null) builder.deadline(deadline);
+        if (priority != null) builder.priority(priority);
+        if (description != null) builder.description(description);
+        if (attachedUrl != null) builder.attachedUrl(attachedUrl);
+        if (weatherNote != null) builder.weatherNote(weatherNote);
+        return builder;
+    }
+}
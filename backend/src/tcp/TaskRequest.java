@@ -0,0 +1,29 @@
+package tcp;
+
+import com.google.gson.JsonElement;
+
+/**
+ * One request line, as decoded by TaskRequestProcessor.parse(): the action, its typed data
+ * and the optional requestId. A line that could not be decoded carries the failure instead,
+ * which process() turns into the error response.
+ */
+public final class TaskRequest {
+    final String action;
+    final JsonElement requestId;
+    final Object data; // from the action's reader; null if the request had no data
+    final Exception failure;
+
+    TaskRequest(String action, JsonElement requestId, Object data, Exception failure) {
+        this.action = action;
+        this.requestId = requestId;
+        this.data = data;
+        this.failure = failure;
+    }
+
+    /**
+     * The requestId to echo, or null for an untagged request (answered in order).
+     */
+    public JsonElement getRequestId() {
+        return requestId == null || requestId.isJsonNull() ? null : requestId;
+    }
+}
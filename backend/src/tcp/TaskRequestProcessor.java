@@ -0,0 +1,605 @@
+package tcp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import shared.DataStore;
+import shared.IdGenerator;
+import shared.JsonUtils;
+import shared.MetricsRegistry;
+import shared.RateLimiter;
+import shared.Task;
+import shared.TaskBatch;
+import shared.TaskPage;
+import shared.TaskQuery;
+import shared.VersionConflictException;
+import udp.UDPNotificationServer;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The task protocol's actions (CREATE_TASK, GET_TASKS, ...), independent of how requests
+ * arrive. Shared by the blocking TCPTaskServer and the selector-based NioTaskServer.
+ * Stateless and thread-safe.
+ *
+ * Each action is registered once with the reader for its "data" (TaskRequests) and its
+ * handler. parse() streams a request line through that reader, so a request becomes a
+ * small typed object without an intermediate JSON tree; adding an action is one register()
+ * line plus its handler.
+ */
+public class TaskRequestProcessor {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Requests processed at once, whatever thread model and engine they arrive through.
+    // The fixed worker pool used to be the only bound; connection threads and virtual
+    // threads (-Dnetstream.threads=virtual) are not bounded by anything.
+    private static final Semaphore STORE_PERMITS =
+            new Semaphore(Integer.getInteger("netstream.store.maxConcurrency", 50));
+
+    // Admission control: requests a server holds at once (received, not yet answered),
+    // whether queued for a worker, waiting for a permit or running. Beyond that requests
+    // are answered "Server busy" straight away rather than queued.
+    static final int MAX_PENDING_REQUESTS = Integer.getInteger("netstream.tcp.maxPendingRequests", 1000);
+    private static final String BUSY_MESSAGE = "Server busy, retry later";
+
+    // Per-client rate limits (see RateLimiter). Loopback is trusted by default: the gateway
+    // forwards every browser's requests from there, and limits them itself.
+    private static final String TRUSTED_CLIENTS =
+            System.getProperty("netstream.rateLimit.tcpTrusted", "127.0.0.1,0:0:0:0:0:0:0:1");
+
+    // Items accepted in one BATCH_* request
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("netstream.tcp.maxBatchSize", 5000);
+
+    /**
+     * A registered action: how to read its data and what to do with it. The handler gets
+     * null when the request had no "data".
+     */
+    private static final class Action<R> {
+        final TaskRequests.Reader<R> reader;
+        final Function<R, String> handler;
+
+        Action(TaskRequests.Reader<R> reader, Function<R, String> handler) {
+            this.reader = reader;
+            this.handler = handler;
+        }
+
+        @SuppressWarnings("unchecked")
+        String handle(Object data) {
+            return handler.apply((R) data);
+        }
+    }
+
+    private final Map<String, Action<?>> actions = new HashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final RateLimiter rateLimiter = new RateLimiter("tcp", TRUSTED_CLIENTS, MetricsRegistry.tcpRateLimited);
+
+    public TaskRequestProcessor() {
+        register("CREATE_TASK", TaskRequests::readFields, this::handleCreateTask);
+        register("GET_TASKS", TaskRequests::readPage, this::handleGetTasks);
+        register("GET_TASK", TaskRequests::readTaskId, this::handleGetTask);
+        register("UPDATE_TASK", TaskRequests::readUpdate, this::handleUpdateTask);
+        register("DELETE_TASK", TaskRequests::readTaskId, this::handleDeleteTask);
+        register("QUERY_TASKS", TaskRequests::readQuery, this::handleQueryTasks);
+        register("GET_CHANGES", TaskRequests::readSinceVersion, this::handleGetChanges);
+        register("BATCH_CREATE",
+                in -> TaskRequests.readBatch(in, "tasks", JsonToken.BEGIN_OBJECT, TaskRequests::readFields, MAX_BATCH_SIZE),
+                batch -> handleBatch("BATCH_CREATE", "tasks", batch));
+        register("BATCH_UPDATE",
+                in -> TaskRequests.readBatch(in, "updates", JsonToken.BEGIN_OBJECT, TaskRequests::readUpdate, MAX_BATCH_SIZE),
+                batch -> handleBatch("BATCH_UPDATE", "updates", batch));
+        register("BATCH_DELETE",
+                in -> TaskRequests.readBatch(in, "taskIds", JsonToken.STRING, TaskRequests::readId, MAX_BATCH_SIZE),
+                batch -> handleBatch("BATCH_DELETE", "taskIds", batch));
+    }
+
+    private <R> void register(String action, TaskRequests.Reader<R> reader, Function<R, String> handler) {
+        actions.put(action, new Action<>(reader, handler));
+    }
+
+    // Responses are always JSON objects; put the requestId first so clients can route early
+    static String withRequestId(String response, JsonElement requestId) {
+        return "{\"requestId\":" + requestId + "," + response.substring(1);
+    }
+
+    /**
+     * Admit one request from 'client' (its address): null if admitted, then it is handled
+     * with processAdmitted(), or release() if it is dropped. Otherwise the response to send
+     * instead (without requestId): rate limited, or busy if MAX_PENDING_REQUESTS are held.
+     */
+    String admit(String client, TaskRequest request) {
+        long retryAfterMs = rateLimiter.tryAcquire(client, request.action);
+        if (retryAfterMs > 0) {
+            return rateLimitedResponse(retryAfterMs);
+        }
+        return admit() ? null : busyResponse();
+    }
+
+    /**
+     * admit() for a BinaryProtocol frame: null if admitted, otherwise the error frame.
+     */
+    byte[] admit(String client, byte[] frame) {
+        long retryAfterMs = rateLimiter.tryAcquire(client, BinaryProtocol.actionOf(frame));
+        if (retryAfterMs > 0) {
+            return BinaryProtocol.errorFrame(BinaryProtocol.requestIdOf(frame), rateLimitMessage(retryAfterMs));
+        }
+        return admit() ? null : busyFrame(BinaryProtocol.requestIdOf(frame));
+    }
+
+    private boolean admit() {
+        if (pending.incrementAndGet() > MAX_PENDING_REQUESTS) {
+            pending.decrementAndGet();
+            MetricsRegistry.tcpRejected.incrementAndGet();
+            return false;
+        }
+        MetricsRegistry.tcpInFlight.incrementAndGet();
+        return true;
+    }
+
+    void release() {
+        pending.decrementAndGet();
+        MetricsRegistry.tcpInFlight.decrementAndGet();
+    }
+
+    String processAdmitted(TaskRequest request) {
+        try {
+            return process(request);
+        } finally {
+            release();
+        }
+    }
+
+    byte[] processAdmitted(byte[] frame) {
+        try {
+            return process(frame);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Handle one request line for a caller in this JVM (the gateway's in-process mode): the
+     * same admission bound and DataStore permits as a network request, without the socket
+     * or the rate limit. Returns the response line, with the requestId if the request had one.
+     */
+    public String processLocal(String line) {
+        TaskRequest request = parse(line);
+        JsonElement requestId = request.getRequestId();
+        String response = admit() ? processAdmitted(request) : busyResponse();
+        return requestId == null ? response : withRequestId(response, requestId);
+    }
+
+    static String busyResponse() {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "error");
+        response.addProperty("message", BUSY_MESSAGE);
+        response.addProperty("type", "ServerBusy");
+        return response.toString();
+    }
+
+    static byte[] busyFrame(int requestId) {
+        return BinaryProtocol.errorFrame(requestId, BUSY_MESSAGE);
+    }
+
+    static String rateLimitedResponse(long retryAfterMs) {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "error");
+        response.addProperty("message", rateLimitMessage(retryAfterMs));
+        response.addProperty("type", "RateLimited");
+        response.addProperty("retryAfterMs", retryAfterMs);
+        return response.toString();
+    }
+
+    private static String rateLimitMessage(long retryAfterMs) {
+        return "Rate limit exceeded, retry in " + retryAfterMs + " ms";
+    }
+
+    /**
+     * Decode one request line. Never throws: a line that is not a valid request comes back
+     * with its failure (and its requestId, if that was read before the error), for process()
+     * to answer.
+     */
+    public TaskRequest parse(String line) {
+        String action = null;
+        JsonElement requestId = null;
+        Object data = null;
+        JsonElement unreadData = null;
+        try {
+            JsonReader in = new JsonReader(new StringReader(line));
+            in.setLenient(true); // as JsonParser, which this replaced
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "action":
+                        action = TaskRequests.readString(in);
+                        break;
+                    case "requestId":
+                        requestId = JsonParser.parseReader(in);
+                        break;
+                    case "data":
+                        Action<?> handler = action == null ? null : actions.get(action);
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                        } else if (handler != null) {
+                            data = handler.reader.read(in);
+                        } else if (action == null) {
+                            // "data" before "action": keep it until we know how to read it
+                            unreadData = JsonParser.parseReader(in);
+                        } else {
+                            in.skipValue(); // unknown action, reported by process()
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (in.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document.");
+            }
+
+            Action<?> handler = action == null ? null : actions.get(action);
+            if (unreadData != null && handler != null) {
+                data = handler.reader.read(new JsonReader(new StringReader(unreadData.toString())));
+            }
+            return new TaskRequest(action, requestId, data, null);
+
+        } catch (Exception e) {
+            return new TaskRequest(action, requestId, null, e);
+        }
+    }
+
+    /**
+     * Handle one parsed request and return the JSON response line (without newline).
+     * Never throws; failures become error responses.
+     */
+    public String process(TaskRequest request) {
+        try {
+            STORE_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return JsonUtils.createErrorResponse("Server is shutting down");
+        }
+        try {
+            return dispatch(request);
+        } finally {
+            STORE_PERMITS.release();
+        }
+    }
+
+    /**
+     * Handle one binary protocol frame (see BinaryProtocol) and return the response frame.
+     * Never throws; failures become error frames.
+     */
+    public byte[] process(byte[] frame) {
+        try {
+            STORE_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BinaryProtocol.errorFrame(BinaryProtocol.requestIdOf(frame), "Server is shutting down");
+        }
+        try {
+            return BinaryProtocol.handle(frame, this);
+        } finally {
+            STORE_PERMITS.release();
+        }
+    }
+
+    String dispatch(TaskRequest request) {
+        try {
+            if (request.failure != null) {
+                return JsonUtils.createErrorResponse(request.failure);
+            }
+            if (request.action == null) {
+                return JsonUtils.createErrorResponse("Missing 'action' field");
+            }
+            Action<?> action = actions.get(request.action);
+            if (action == null) {
+                return JsonUtils.createErrorResponse("Unknown action: " + request.action);
+            }
+            return action.handle(request.data);
+
+        } catch (Exception e) {
+            return JsonUtils.createErrorResponse(e);
+        }
+    }
+
+    private String handleCreateTask(TaskFields data) {
+        if (data == null) {
+            return JsonUtils.createErrorResponse("Missing 'data' field");
+        }
+
+        // Validate required fields
+        if (data.title == null || data.assignee == null) {
+            return JsonUtils.createErrorResponse("Missing required fields: title, assignee");
+        }
+
+        Task task = createTask(data);
+
+        // Return success response
+        JsonObject responseData = new JsonObject();
+        responseData.addProperty("taskId", task.getId());
+        responseData.addProperty("message", "Task created successfully");
+        
+        return JsonUtils.createSuccessResponse(responseData);
+    }
+
+    /**
+     * Store a new task and announce it. Used by CREATE_TASK and the binary protocol.
+     */
+    Task createTask(TaskFields fields) {
+        Task task = DataStore.addTask(newTask(fields));
+
+        // Broadcast with assignee name in the format:
+        // TASK_CREATED|task_123|Task 'title' assigned to John Doe
+        String notification = "TASK_CREATED|" + task.getId() + "|Task '" + task.getTitle() + "' assigned to " + task.getAssignee();
+        UDPNotificationServer.broadcast(notification);
+        return task;
+    }
+
+    // A new task from CREATE_TASK fields: title and assignee required, deadline and priority defaulted
+    private static Task newTask(TaskFields fields) {
+        if (fields.title == null || fields.assignee == null) {
+            throw new IllegalArgumentException("Missing required fields: title, assignee");
+        }
+        Task.Builder builder = Task.builder(IdGenerator.next("task_"))
+                .deadline("")
+                .priority("medium");
+        return fields.applyTo(builder).build();
+    }
+
+    private String handleGetTasks(TaskRequests.Page data) {
+        // No paging parameters: keep the original response (plain array of every task)
+        if (data == null || !data.paged) {
+            List<Task> tasks = DataStore.getAllTasks();
+            return JsonUtils.createSuccessResponse(tasks);
+        }
+
+        int limit = data.limit == -1 ? DEFAULT_PAGE_SIZE : data.limit;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return JsonUtils.createErrorResponse("'limit' must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        TaskPage page = DataStore.getTasksPage(data.sortBy, data.descending, data.cursor, limit);
+        return JsonUtils.createSuccessResponse(page);
+    }
+
+    private String handleQueryTasks(TaskQuery query) {
+        List<Task> tasks = DataStore.queryTasks(query != null ? query : new TaskQuery());
+        return JsonUtils.createSuccessResponse(tasks);
+    }
+
+    private String handleGetChanges(Long sinceVersion) {
+        // No version yet: full snapshot
+        return JsonUtils.createSuccessResponse(DataStore.getChangesSince(sinceVersion != null ? sinceVersion : -1));
+    }
+
+    private String handleGetTask(String taskId) {
+        if (taskId == null) {
+            return JsonUtils.createErrorResponse("Missing 'taskId' field");
+        }
+
+        Task task = DataStore.getTask(taskId);
+
+        if (task == null) {
+            return JsonUtils.createErrorResponse("Task not found: " + taskId);
+        }
+
+        return JsonUtils.createSuccessResponse(task);
+    }
+
+    private String handleUpdateTask(TaskRequests.Update data) {
+        if (data == null) {
+            return JsonUtils.createErrorResponse("Missing 'data' field");
+        }
+        if (data.taskId == null) {
+            return JsonUtils.createErrorResponse("Missing 'taskId' field");
+        }
+
+        try {
+            Task task = updateTask(data.taskId, data.expectedVersion, data.fields);
+
+            if (task == null) {
+                return JsonUtils.createErrorResponse("Task not found: " + data.taskId);
+            }
+
+            // New version, for the client's next conditional update
+            JsonObject responseData = new JsonObject();
+            responseData.addProperty("taskId", data.taskId);
+            responseData.addProperty("version", task.getVersion());
+            JsonObject response = new JsonObject();
+            response.addProperty("status", "success");
+            response.addProperty("message", "Task updated successfully");
+            response.add("data", responseData);
+            return response.toString();
+
+        } catch (VersionConflictException e) {
+            JsonObject response = new JsonObject();
+            response.addProperty("status", "error");
+            response.addProperty("message", e.getMessage());
+            response.addProperty("type", "VersionConflict");
+            response.addProperty("currentVersion", e.getCurrentVersion());
+            return response.toString();
+        }
+    }
+
+    /**
+     * Apply the sent fields to a task and announce it; null if there is no such task.
+     * Throws VersionConflictException when expectedVersion no longer matches.
+     */
+    Task updateTask(String taskId, long expectedVersion, TaskFields fields) {
+        Task task = DataStore.updateTask(taskId, expectedVersion, current -> applyChanges(current, fields));
+        if (task != null) {
+            // Broadcast with format: TASK_UPDATED|task_123|Task 'title' updated by Assignee Name
+            String notification = "TASK_UPDATED|" + taskId + "|Task '" + task.getTitle() + "' updated by " + task.getAssignee();
+            UDPNotificationServer.broadcast(notification);
+        }
+        return task;
+    }
+
+    // Tasks are immutable: build the updated copy from the current one
+    private static Task applyChanges(Task current, TaskFields fields) {
+        return fields.applyTo(current.toBuilder().updatedAt(System.currentTimeMillis())).build();
+    }
+
+    private String handleDeleteTask(String taskId) {
+        if (taskId == null) {
+            return JsonUtils.createErrorResponse("Missing 'taskId' field");
+        }
+
+        if (!deleteTask(taskId)) {
+            return JsonUtils.createErrorResponse("Task not found: " + taskId);
+        }
+
+        return JsonUtils.createSuccessResponse("Task deleted successfully");
+    }
+
+    /**
+     * Delete a task and announce it; false if there was no such task.
+     */
+    boolean deleteTask(String taskId) {
+        // Get task before deleting to include assignee in notification
+        Task task = DataStore.getTask(taskId);
+        boolean deleted = DataStore.deleteTask(taskId);
+
+        if (deleted && task != null) {
+            // Broadcast with format: TASK_DELETED|task_123|Task 'title' deleted (was assigned to Assignee Name)
+            String notification = "TASK_DELETED|" + taskId + "|Task '" + task.getTitle() + "' deleted (was assigned to " + task.getAssignee() + ")";
+            UDPNotificationServer.broadcast(notification);
+        }
+        return deleted;
+    }
+
+    /**
+     * BATCH_CREATE {"tasks":[{title, assignee, ...}, ...]}
+     * BATCH_UPDATE {"updates":[{taskId, expectedVersion?, fields...}, ...]}
+     * BATCH_DELETE {"taskIds":[...]}
+     *
+     * All items are applied and persisted together (one log write) and announced with a
+     * single notification. The response has one result per item, in request order; a
+     * failed item does not fail the others.
+     */
+    private String handleBatch(String action, String field, TaskRequests.Batch<?> data) {
+        if (data == null) {
+            return JsonUtils.createErrorResponse("Missing 'data' field");
+        }
+        if (data.items == null) {
+            return JsonUtils.createErrorResponse("Missing '" + field + "' array");
+        }
+        if (data.size > MAX_BATCH_SIZE) {
+            return JsonUtils.createErrorResponse("Batch too large: " + data.size + " items, at most " + MAX_BATCH_SIZE);
+        }
+
+        // Items that fail validation get their error here; the rest go into the batch
+        int count = data.items.size();
+        JsonObject[] results = new JsonObject[count];
+        int[] positions = new int[count];
+        TaskBatch batch = new TaskBatch();
+        for (int i = 0; i < count; i++) {
+            if (data.errors.get(i) != null) {
+                results[i] = itemError(i, null, data.errors.get(i));
+                continue;
+            }
+            try {
+                addToBatch(data.items.get(i), batch);
+                positions[batch.size() - 1] = i;
+            } catch (RuntimeException e) {
+                results[i] = itemError(i, null, e.getMessage());
+            }
+        }
+
+        List<TaskBatch.Result> applied = batch.size() > 0 ? DataStore.applyBatch(batch) : List.of();
+        int succeeded = 0;
+        for (int j = 0; j < applied.size(); j++) {
+            TaskBatch.Result result = applied.get(j);
+            results[positions[j]] = itemResult(positions[j], result);
+            if (result.isSuccess()) {
+                succeeded++;
+            }
+        }
+
+        if (succeeded > 0) {
+            // One notification for the whole batch
+            String verb = action.equals("BATCH_CREATE") ? "created" : action.equals("BATCH_UPDATE") ? "updated" : "deleted";
+            UDPNotificationServer.broadcast("TASK_BATCH|batch_" + DataStore.getVersion() + "|" + succeeded + " tasks " + verb);
+        }
+
+        JsonArray resultArray = new JsonArray();
+        for (JsonObject result : results) {
+            resultArray.add(result);
+        }
+        JsonObject responseData = new JsonObject();
+        responseData.addProperty("succeeded", succeeded);
+        responseData.addProperty("failed", count - succeeded);
+        responseData.add("results", resultArray);
+        // Built directly: createSuccessResponse() would copy the whole tree once more
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "success");
+        response.add("data", responseData);
+        return response.toString();
+    }
+
+    // One decoded item: TaskFields to create, an Update, or a task id to delete
+    private static void addToBatch(Object item, TaskBatch batch) {
+        if (item instanceof TaskFields) {
+            batch.put(newTask((TaskFields) item));
+        } else if (item instanceof TaskRequests.Update) {
+            TaskRequests.Update update = (TaskRequests.Update) item;
+            if (update.taskId == null) {
+                throw new IllegalArgumentException("Missing 'taskId' field");
+            }
+            batch.update(update.taskId, update.expectedVersion, current -> applyChanges(current, update.fields));
+        } else {
+            batch.delete((String) item);
+        }
+    }
+
+    private static JsonObject itemResult(int index, TaskBatch.Result result) {
+        switch (result.getOutcome()) {
+            case CREATED:
+            case UPDATED:
+            case DELETED: {
+                JsonObject item = new JsonObject();
+                item.addProperty("index", index);
+                item.addProperty("status", "success");
+                item.addProperty("taskId", result.getTaskId());
+                if (result.getOutcome() != TaskBatch.Result.Outcome.DELETED) {
+                    item.addProperty("version", result.getTask().getVersion());
+                }
+                return item;
+            }
+            case NOT_FOUND:
+                return itemError(index, result.getTaskId(), "Task not found: " + result.getTaskId());
+            case CONFLICT: {
+                JsonObject item = itemError(index, result.getTaskId(),
+                        "Version conflict on " + result.getTaskId() + ": current version is " + result.getCurrentVersion());
+                item.addProperty("type", "VersionConflict");
+                item.addProperty("currentVersion", result.getCurrentVersion());
+                return item;
+            }
+            default:
+                return itemError(index, result.getTaskId(), result.getError());
+        }
+    }
+
+    private static JsonObject itemError(int index, String taskId, String message) {
+        JsonObject item = new JsonObject();
+        item.addProperty("index", index);
+        item.addProperty("status", "error");
+        if (taskId != null) {
+            item.addProperty("taskId", taskId);
+        }
+        item.addProperty("message", message);
+        return item;
+    }
+}
@@ -0,0 +1,230 @@
+package tcp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import shared.DataStore;
+import shared.TaskQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed "data" of the task protocol's actions and their decoders. Each decoder reads the
+ * data object straight from the request's JsonReader, keeping only the members its action
+ * uses; nothing builds a JSON tree.
+ */
+final class TaskRequests {
+    private TaskRequests() {}
+
+    /**
+     * Reads one action's data object; the reader is positioned at its BEGIN_OBJECT.
+     */
+    @FunctionalInterface
+    interface Reader<R> {
+        R read(JsonReader in) throws IOException;
+    }
+
+    /**
+     * UPDATE_TASK, and each item of BATCH_UPDATE.
+     */
+    static final class Update {
+        String taskId;
+        long expectedVersion = DataStore.ANY_VERSION;
+        final TaskFields fields = new TaskFields();
+    }
+
+    /**
+     * GET_TASKS. Without limit, cursor and sortBy it asks for the plain list of every task.
+     */
+    static final class Page {
+        boolean paged;
+        int limit = -1;
+        String sortBy = "createdAt";
+        boolean descending;
+        String cursor;
+    }
+
+    /**
+     * BATCH_*: the items in request order. An item that could not be decoded is null, with
+     * its reason at the same index in errors. items is null when the array was missing.
+     */
+    static final class Batch<T> {
+        List<T> items;
+        final List<String> errors = new ArrayList<>();
+        int size; // items in the request, also those past the batch limit that were skipped
+    }
+
+    // ---- Decoders ----
+
+    /**
+     * GET_TASK, DELETE_TASK: the taskId, null if missing.
+     */
+    static String readTaskId(JsonReader in) throws IOException {
+        String taskId = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("taskId".equals(in.nextName())) {
+                taskId = readString(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return taskId;
+    }
+
+    static Update readUpdate(JsonReader in) throws IOException {
+        Update update = new Update();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            int field = TaskFields.fieldNumber(name);
+            if (field != 0) {
+                update.fields.set(field, readString(in));
+            } else if ("taskId".equals(name)) {
+                update.taskId = readString(in);
+            } else if ("expectedVersion".equals(name)) {
+                update.expectedVersion = in.nextLong();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return update;
+    }
+
+    static Page readPage(JsonReader in) throws IOException {
+        Page page = new Page();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "limit":
+                    page.limit = in.nextInt();
+                    page.paged = true;
+                    break;
+                case "cursor":
+                    page.cursor = readString(in);
+                    page.paged = true;
+                    break;
+                case "sortBy":
+                    page.sortBy = readString(in);
+                    page.paged = true;
+                    break;
+                case "order":
+                    page.descending = "desc".equalsIgnoreCase(readString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return page;
+    }
+
+    static TaskQuery readQuery(JsonReader in) throws IOException {
+        TaskQuery query = new TaskQuery();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            String value = in.peek() == JsonToken.STRING || in.peek() == JsonToken.NUMBER ? in.nextString() : null;
+            if (value == null) {
+                in.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "status": query.status(value); break;
+                case "assignee": query.assignee(value); break;
+                case "priority": query.priority(value); break;
+                case "deadlineFrom": query.deadlineFrom(value); break;
+                case "deadlineTo": query.deadlineTo(value); break;
+                default: break;
+            }
+        }
+        in.endObject();
+        return query;
+    }
+
+    /**
+     * GET_CHANGES: sinceVersion, -1 (full snapshot) if missing.
+     */
+    static Long readSinceVersion(JsonReader in) throws IOException {
+        long sinceVersion = -1;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("sinceVersion".equals(in.nextName())) {
+                sinceVersion = in.nextLong();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return sinceVersion;
+    }
+
+    /**
+     * The array member 'field' of a BATCH_* data object, each item read with itemReader.
+     * Items that are not of itemType (numbers pass for strings) get an error instead;
+     * items past maxItems are only counted.
+     */
+    static <T> Batch<T> readBatch(JsonReader in, String field, JsonToken itemType, Reader<T> itemReader,
+                                  int maxItems) throws IOException {
+        Batch<T> batch = new Batch<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (!field.equals(in.nextName()) || in.peek() != JsonToken.BEGIN_ARRAY) {
+                in.skipValue();
+                continue;
+            }
+            batch.items = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                batch.size++;
+                JsonToken token = in.peek();
+                if (batch.size > maxItems) {
+                    in.skipValue();
+                } else if (token == itemType || (itemType == JsonToken.STRING && token == JsonToken.NUMBER)) {
+                    batch.items.add(itemReader.read(in));
+                    batch.errors.add(null);
+                } else {
+                    in.skipValue();
+                    batch.items.add(null);
+                    batch.errors.add("Expected " + itemType + " but was " + token);
+                }
+            }
+            in.endArray();
+        }
+        in.endObject();
+        return batch;
+    }
+
+    static TaskFields readFields(JsonReader in) throws IOException {
+        return TaskFields.read(in);
+    }
+
+    /**
+     * BATCH_DELETE item: a task id.
+     */
+    static String readId(JsonReader in) throws IOException {
+        return nextString(in);
+    }
+
+    /**
+     * A string member, also accepting a number (as its literal); null for JSON null.
+     */
+    static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return nextString(in);
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a string but was " + token + " at " + in.getPath());
+        }
+        return in.nextString();
+    }
+}
@@ -0,0 +1,37 @@
+package tcp;
+
+/**
+ * The task protocol server on port 8080. Two engines, chosen at startup with
+ * -Dnetstream.tcp.engine:
+ *
+ *   blocking - TCPTaskServer, one thread per connection (default)
+ *   nio      - NioTaskServer, selector threads plus a worker pool for request processing
+ */
+public interface TaskServer {
+
+    /**
+     * Serve until stop() is called. Blocks the calling thread.
+     */
+    void start();
+
+    void stop();
+
+    /**
+     * The processor behind this server, for callers in the same JVM (the gateway's
+     * in-process mode) to share its admission bound.
+     */
+    TaskRequestProcessor processor();
+
+    static TaskServer create(int port) {
+        String engine = System.getProperty("netstream.tcp.engine", "blocking");
+        switch (engine) {
+            case "nio":
+                return new NioTaskServer(port);
+            case "blocking":
+                return new TCPTaskServer(port);
+            default:
+                System.err.println("[ERROR] Unknown TCP engine '" + engine + "', using blocking");
+                return new TCPTaskServer(port);
+        }
+    }
+}
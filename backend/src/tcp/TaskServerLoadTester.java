@@ -0,0 +1,101 @@
+package tcp;
+
+import com.google.gson.JsonObject;
+import shared.JsonUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load client for the task server: opens N connections at once, then every connection
+ * sends R GET_TASK requests back to back. Used to compare thread models, e.g.
+ *
+ *   java -Dnetstream.tcp.maxConnections=10000 [-Dnetstream.threads=virtual | -Dnetstream.tcp.engine=nio] tcp.TCPTaskServer
+ *   java -Xss256k tcp.TaskServerLoadTester 10000 20
+ */
+public class TaskServerLoadTester {
+    private static final String HOST = "localhost";
+    private static final int PORT = 8080;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        String taskId = createTask();
+        String request = "{\"action\":\"GET_TASK\",\"data\":{\"taskId\":\"" + taskId + "\"}}";
+
+        long[][] latencies = new long[clients][];
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[clients];
+
+        long connectStart = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            threads[i] = new Thread(null, () -> {
+                try (Socket socket = new Socket(HOST, PORT);
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                     PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+                    connected.countDown();
+                    go.await();
+                    long[] times = new long[requests];
+                    for (int r = 0; r < requests; r++) {
+                        long start = System.nanoTime();
+                        out.println(request);
+                        String response = in.readLine();
+                        if (response == null || !response.contains("\"success\"")) {
+                            throw new IOException("Bad response: " + response);
+                        }
+                        times[r] = System.nanoTime() - start;
+                    }
+                    latencies[client] = times;
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                    connected.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "load-" + i, 256 * 1024);
+            threads[i].start();
+        }
+        connected.await();
+        long connectMs = (System.nanoTime() - connectStart) / 1_000_000;
+
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] all = Arrays.stream(latencies).filter(a -> a != null).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("[Load] %,d clients x %,d requests  connect %,d ms  failed clients %,d%n",
+                clients, requests, connectMs, failed.get());
+        if (all.length > 0) {
+            System.out.printf("[Load] %,d requests in %,d ms  %,.0f req/s  p50 %.2f ms  p99 %.2f ms  max %.2f ms%n",
+                    all.length, elapsedNanos / 1_000_000, all.length * 1e9 / elapsedNanos,
+                    percentile(all, 0.50), percentile(all, 0.99), all[all.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1e6;
+    }
+
+    private static String createTask() throws IOException {
+        try (Socket socket = new Socket(HOST, PORT);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            out.println("{\"action\":\"CREATE_TASK\",\"data\":{\"title\":\"load test\",\"assignee\":\"load\"}}");
+            JsonObject response = JsonUtils.parseJson(in.readLine());
+            return response.getAsJsonObject("data").get("taskId").getAsString();
+        }
+    }
+}
@@ -1,24 +1,118 @@
 package threading;
 
+import shared.MetricsRegistry;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Shared executors. -Dnetstream.threads selects the thread model:
+ *
+ *   platform - fixed pool of THREAD_POOL_SIZE workers, cached pool for connections (default)
+ *   virtual  - a new virtual thread per task for both (JDK 21+); blocking socket code then
+ *              scales with connections instead of the pool size. Falls back to platform
+ *              threads on older JDKs.
+ *
+ * In virtual mode nothing bounds concurrency any more, so callers that touch shared state
+ * limit themselves (TaskRequestProcessor's DataStore permits).
+ *
+ * The platform pool queues at most QUEUE_SIZE tasks (-Dnetstream.threads.queueSize); beyond
+ * that execute()/submit() throw RejectedExecutionException, so callers must answer "busy"
+ * instead of piling up work during a spike. Queued and rejected tasks are counted in
+ * MetricsRegistry.
+ */
 public class ThreadPoolManager {
     private static ExecutorService threadPool;
     private static final int THREAD_POOL_SIZE = 50;
+    private static final int QUEUE_SIZE = Integer.getInteger("netstream.threads.queueSize", 1000);
+    private static final boolean VIRTUAL = "virtual".equals(System.getProperty("netstream.threads", "platform"));
+
+    // Threads for long-lived (keep-alive) connections, which mostly sit idle waiting for the
+    // next request and must not tie up the fixed pool. Callers bound the number of connections.
+    private static ExecutorService connectionPool;
 
     public static synchronized ExecutorService getThreadPool() {
         if (threadPool == null) {
-            threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
-            System.out.println("✅ Thread pool initialized with " + THREAD_POOL_SIZE + " threads");
+            threadPool = VIRTUAL ? newVirtualThreadExecutor() : null;
+            if (threadPool != null) {
+                System.out.println("✅ Thread pool initialized with virtual threads");
+            } else {
+                threadPool = new MeteredThreadPool(THREAD_POOL_SIZE, QUEUE_SIZE);
+                System.out.println("✅ Thread pool initialized with " + THREAD_POOL_SIZE + " threads, queue of " + QUEUE_SIZE);
+            }
         }
         return threadPool;
     }
 
-    public static void shutdown() {
+    public static synchronized ExecutorService getConnectionPool() {
+        if (connectionPool == null) {
+            connectionPool = VIRTUAL ? newVirtualThreadExecutor() : null;
+            if (connectionPool == null) {
+                AtomicInteger count = new AtomicInteger();
+                connectionPool = Executors.newCachedThreadPool(r -> {
+                    Thread t = new Thread(r, "connection-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Fixed pool with a bounded queue that keeps MetricsRegistry.threadPoolQueued (tasks
+     * waiting for a thread) and threadPoolRejected up to date.
+     */
+    private static final class MeteredThreadPool extends ThreadPoolExecutor {
+        MeteredThreadPool(int threads, int queueSize) {
+            super(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            MetricsRegistry.threadPoolQueued.incrementAndGet();
+            try {
+                super.execute(command);
+            } catch (RejectedExecutionException e) {
+                MetricsRegistry.threadPoolQueued.decrementAndGet();
+                if (!isShutdown()) {
+                    MetricsRegistry.threadPoolRejected.incrementAndGet();
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            MetricsRegistry.threadPoolQueued.decrementAndGet();
+        }
+    }
+
+    // Looked up reflectively so the code still compiles and runs on JDK 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            System.out.println("[WARN] Virtual threads not available on Java "
+                    + System.getProperty("java.version") + ", using platform threads");
+            return null;
+        }
+    }
+
+    public static synchronized void shutdown() {
         if (threadPool != null && !threadPool.isShutdown()) {
             threadPool.shutdown();
             System.out.println("🛑 Thread pool shut down");
         }
+        if (connectionPool != null && !connectionPool.isShutdown()) {
+            connectionPool.shutdown();
+        }
     }
-}
\ No newline at end of file
+}
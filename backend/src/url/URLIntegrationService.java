@@ -15,6 +15,10 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import threading.ThreadPoolManager;
 
 /**
  * URL/URI External Integration Service
@@ -34,6 +38,12 @@ public class URLIntegrationService {
     private static final String GRAVATAR_BASE = "https://www.gravatar.com/avatar/";
     private static final int TIMEOUT = 10000; // 10 seconds
 
+    // Connections stay open between requests (the gateway pools them), so they run on
+    // ThreadPoolManager's connection pool, not the fixed worker pool; beyond MAX_CONNECTIONS
+    // open ones a new connection gets an error and is closed.
+    private static final int MAX_CONNECTIONS = Integer.getInteger("netstream.url.maxConnections", 1000);
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
     public URLIntegrationService(int port) {
         this.port = port;
         createUploadDirectory();
@@ -51,10 +61,22 @@ public class URLIntegrationService {
             System.out.println("[URL Service] Started on port " + port);
             System.out.println("[URL Service] Ready to handle external API requests");
 
+            // External calls take up to TIMEOUT each; handle clients concurrently
+            ExecutorService pool = ThreadPoolManager.getConnectionPool();
             while (running) {
                 try {
                     Socket clientSocket = serverSocket.accept();
-                    handleClient(clientSocket);
+                    if (activeConnections.incrementAndGet() > MAX_CONNECTIONS) {
+                        activeConnections.decrementAndGet();
+                        refuse(clientSocket);
+                        continue;
+                    }
+                    try {
+                        pool.execute(() -> handleClient(clientSocket));
+                    } catch (RejectedExecutionException e) {
+                        activeConnections.decrementAndGet();
+                        clientSocket.close();
+                    }
                 } catch (SocketTimeoutException e) {
                     // Continue loop
                 } catch (IOException e) {
@@ -68,6 +90,16 @@ public class URLIntegrationService {
         }
     }
 
+    private void refuse(Socket clientSocket) {
+        System.out.println("[WARN] URL Service refused client, " + MAX_CONNECTIONS + " connections open");
+        try (Socket socket = clientSocket;
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
+            out.println(JsonUtils.createErrorResponse("Too many connections"));
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
     /**
      * Stop the service
      */
@@ -84,41 +116,64 @@ public class URLIntegrationService {
     }
 
     /**
-     * Handle client requests
+     * Handle client requests. Each request is one or more lines ended by an empty line and
+     * gets a one-line response; the connection stays open for further requests (the
+     * gateway reuses its connections) until the client closes it or is idle for TIMEOUT.
      */
     private void handleClient(Socket clientSocket) {
+        int served = 0;
         try (
                 BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
                 PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
             clientSocket.setSoTimeout(TIMEOUT);
 
-            StringBuilder requestBuilder = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null && !line.isEmpty()) {
-                requestBuilder.append(line);
-            }
+            while (running) {
+                StringBuilder requestBuilder = new StringBuilder();
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty()) {
+                    requestBuilder.append(line);
+                }
 
-            String request = requestBuilder.toString();
-            if (request.isEmpty()) {
-                out.println(JsonUtils.createErrorResponse("Empty request"));
-                return;
-            }
+                String request = requestBuilder.toString();
+                if (request.isEmpty()) {
+                    if (line == null) {
+                        break; // Client closed the connection
+                    }
+                    if (served == 0) {
+                        out.println(JsonUtils.createErrorResponse("Empty request"));
+                        break;
+                    }
+                    continue;
+                }
 
-            System.out.println("[URL Service] Request: " + request);
+                System.out.println("[URL Service] Request: " + request);
 
-            JsonObject jsonRequest = JsonParser.parseString(request).getAsJsonObject();
-            String action = jsonRequest.get("action").getAsString();
-            String response = processAction(action, jsonRequest);
+                String response;
+                try {
+                    JsonObject jsonRequest = JsonParser.parseString(request).getAsJsonObject();
+                    String action = jsonRequest.get("action").getAsString();
+                    response = processAction(action, jsonRequest);
+                } catch (Exception e) {
+                    response = JsonUtils.createErrorResponse(e);
+                }
 
-            out.println(response);
-            System.out.println("[URL Service] Response sent");
+                out.println(response);
+                served++;
+                System.out.println("[URL Service] Response sent");
+                if (line == null) {
+                    break;
+                }
+            }
 
         } catch (SocketTimeoutException e) {
-            System.err.println("[URL Service] Client timeout");
+            if (served == 0) {
+                System.err.println("[URL Service] Client timeout");
+            }
         } catch (Exception e) {
             System.err.println("[URL Service] Error handling client: " + e.getMessage());
             e.printStackTrace();
         } finally {
+            activeConnections.decrementAndGet();
             try {
                 clientSocket.close();
             } catch (IOException e) {
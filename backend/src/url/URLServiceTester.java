@@ -118,14 +118,10 @@ public class URLServiceTester {
             out.println(request);
             out.println(); // Empty line to indicate end of request
 
-            // Read response
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-
-            System.out.println("Response: " + formatJson(response.toString()));
+            // Read response (one line; the service keeps the connection open for more)
+            String response = in.readLine();
+
+            System.out.println("Response: " + formatJson(response != null ? response : ""));
 
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
@@ -112,8 +112,8 @@ export default function NetworkDiagnostics() {
       <div className="mt-6">
         <h4 className="text-sm font-semibold text-slate-700 mb-2">Protocol Counters</h4>
         <div className="grid grid-cols-1 md:grid-cols-3 gap-3">
-          <CounterCard title="TCP" data={counters.tcp} fields={["connections","active","requests","bytesIn","bytesOut"]} />
-          <CounterCard title="HTTP" data={counters.http} fields={["connections","active","requests","bytesIn","bytesOut"]} />
+          <CounterCard title="TCP" data={counters.tcp} fields={["connections","active","requests","inFlight","rejected","rateLimited","bytesIn","bytesOut"]} />
+          <CounterCard title="HTTP" data={counters.http} fields={["connections","active","requests","rejected","rateLimited","eventStreams","bytesIn","bytesOut"]} />
           <CounterCard title="UDP" data={counters.udp} fields={["packetsIn","packetsOut","bytesIn","bytesOut"]} />
         </div>
       </div>
@@ -8,6 +8,7 @@ export interface Task {
   priority: "low" | "medium" | "high";
   createdAt: string;
   updatedAt: string;
+  version?: number;
 }
 
 export interface Notification {
@@ -17,7 +18,7 @@ export interface Notification {
   // backend may return ISO string or a numeric timestamp
   createdAt?: string | number;
   // optional fields used by other code paths
-  type?: "TASK_CREATED" | "TASK_UPDATED" | "TASK_DELETED" | "TASK_ASSIGNED";
+  type?: "TASK_CREATED" | "TASK_UPDATED" | "TASK_DELETED" | "TASK_ASSIGNED" | "TASK_BATCH";
   taskId?: string;
   message?: string;
   timestamp?: number;
@@ -53,6 +54,7 @@ export interface UpdateTaskRequest {
     status?: "pending" | "in-progress" | "completed";
     deadline?: string;
     priority?: "low" | "medium" | "high";
+    expectedVersion?: number;
   };
 }
 